@@ -0,0 +1,243 @@
+package bigint;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tuning knobs for the arithmetic in this package.
+ *
+ * Multiplication thresholds are measured in base 10^9 limbs of the SMALLER
+ * operand, and the division threshold in limbs of the divisor. Each one
+ * starts out from a system property, so it can be tuned without code
+ * changes, e.g. -Dbigint.karatsubaThreshold=48
+ *
+ * Multiplication runs on the calling thread unless a ForkJoinPool is set with
+ * setParallelPool, or the JVM is started with -Dbigint.parallel=true, which
+ * uses the common pool. Parallel products are identical to sequential ones.
+ */
+public final class ArithmeticConfig {
+
+	/**
+	 * Smallest threshold the recursive algorithms can terminate with
+	 */
+	private static final int MIN_THRESHOLD = 4;
+
+	/**
+	 * Largest accepted value cache limit, which already means two million
+	 * cached instances per class
+	 */
+	private static final int MAX_VALUE_CACHE_LIMIT = 1 << 20;
+
+	private static final int VALUE_CACHE_LIMIT =
+			checkValueCacheLimit(Integer.getInteger("bigint.valueCacheLimit", 1024));
+
+	private static volatile int karatsubaThreshold =
+			checkThreshold(Integer.getInteger("bigint.karatsubaThreshold", 32));
+
+	private static volatile int toomCookThreshold =
+			checkThreshold(Integer.getInteger("bigint.toomCookThreshold", 200));
+
+	private static volatile int nttThreshold =
+			checkThreshold(Integer.getInteger("bigint.nttThreshold", 16000));
+
+	private static volatile int burnikelZieglerThreshold =
+			checkThreshold(Integer.getInteger("bigint.burnikelZieglerThreshold", 40));
+
+	private static volatile int parallelThreshold =
+			checkThreshold(Integer.getInteger("bigint.parallelThreshold", 1000));
+
+	private static volatile ForkJoinPool parallelPool =
+			Boolean.getBoolean("bigint.parallel") ? ForkJoinPool.commonPool() : null;
+
+	private ArithmeticConfig() {
+	}
+
+	/**
+	 * @return Operand size, in limbs, from which Karatsuba replaces schoolbook multiplication
+	 */
+	public static int getKaratsubaThreshold() {
+		return karatsubaThreshold;
+	}
+
+	/**
+	 * Sets the operand size, in limbs, from which Karatsuba replaces schoolbook
+	 * multiplication. BigInteger.multiply also hands operands of at least this
+	 * many limbs over to the packed representation.
+	 *
+	 * @param limbs New threshold
+	 * @throws IllegalArgumentException If the threshold is below 4 limbs
+	 */
+	public static void setKaratsubaThreshold(int limbs) {
+		karatsubaThreshold = checkThreshold(limbs);
+	}
+
+	/**
+	 * @return Operand size, in limbs, from which Toom-Cook 3-way replaces Karatsuba
+	 */
+	public static int getToomCookThreshold() {
+		return toomCookThreshold;
+	}
+
+	/**
+	 * Sets the operand size, in limbs, from which Toom-Cook 3-way replaces Karatsuba.
+	 *
+	 * @param limbs New threshold
+	 * @throws IllegalArgumentException If the threshold is below 4 limbs
+	 */
+	public static void setToomCookThreshold(int limbs) {
+		toomCookThreshold = checkThreshold(limbs);
+	}
+
+	/**
+	 * @return Operand size, in limbs, from which the number-theoretic transform takes over
+	 */
+	public static int getNttThreshold() {
+		return nttThreshold;
+	}
+
+	/**
+	 * Sets the operand size, in limbs, from which multiplication switches to the
+	 * number-theoretic transform.
+	 *
+	 * @param limbs New threshold
+	 * @throws IllegalArgumentException If the threshold is below 4 limbs
+	 */
+	public static void setNttThreshold(int limbs) {
+		nttThreshold = checkThreshold(limbs);
+	}
+
+	/**
+	 * @return Divisor size, in limbs, from which Burnikel-Ziegler replaces Knuth division
+	 */
+	public static int getBurnikelZieglerThreshold() {
+		return burnikelZieglerThreshold;
+	}
+
+	/**
+	 * Sets the divisor size, in limbs, from which Burnikel-Ziegler recursive
+	 * division replaces Knuth's Algorithm D.
+	 *
+	 * @param limbs New threshold
+	 * @throws IllegalArgumentException If the threshold is below 4 limbs
+	 */
+	public static void setBurnikelZieglerThreshold(int limbs) {
+		burnikelZieglerThreshold = checkThreshold(limbs);
+	}
+
+	/**
+	 * @return Operand size, in limbs, from which multiplication splits its work into parallel tasks
+	 */
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Sets the operand size, in limbs, from which multiplication splits its
+	 * subproducts (or the stages of the number-theoretic transform) into tasks
+	 * for the parallel pool. Has no effect while no pool is set.
+	 *
+	 * @param limbs New threshold
+	 * @throws IllegalArgumentException If the threshold is below 4 limbs
+	 */
+	public static void setParallelThreshold(int limbs) {
+		parallelThreshold = checkThreshold(limbs);
+	}
+
+	/**
+	 * @return Pool that large multiplications run their tasks in, or null if they run sequentially
+	 */
+	public static ForkJoinPool getParallelPool() {
+		return parallelPool;
+	}
+
+	/**
+	 * Sets the pool that multiplications of at least getParallelThreshold()
+	 * limbs run their tasks in, or switches parallel multiplication off when
+	 * null. The pool is looked up each time work is split, so a product that is
+	 * running while this is called may use both; its result is the same either
+	 * way.
+	 *
+	 * @param pool Pool to use, or null
+	 */
+	public static void setParallelPool(ForkJoinPool pool) {
+		parallelPool = pool;
+	}
+
+	/**
+	 * BigInteger.valueOf and PackedBigInteger.valueOf return shared canonical
+	 * instances for every value from -limit to limit. The caches are built
+	 * when the classes load, so the limit is fixed at startup, from
+	 * -Dbigint.valueCacheLimit (1024 by default, 0 caches only zero).
+	 *
+	 * @return Largest magnitude with a canonical cached instance
+	 */
+	public static int getValueCacheLimit() {
+		return VALUE_CACHE_LIMIT;
+	}
+
+	/**
+	 * @return True if tracing was switched on with -Dbigint.trace=true
+	 */
+	public static boolean isTraceEnabled() {
+		return Trace.ENABLED;
+	}
+
+	/**
+	 * Installs the listener that receives trace events, or removes it when
+	 * null. Tracing has to be switched on at startup with -Dbigint.trace=true;
+	 * otherwise the trace points are compiled out and no listener could ever
+	 * be called.
+	 *
+	 * @param listener Listener to install, or null
+	 * @throws IllegalStateException If tracing was not switched on
+	 */
+	public static void setTraceListener(TraceListener listener) {
+		if (!Trace.ENABLED && listener != null) {
+			throw new IllegalStateException("Tracing is off, start the JVM with -Dbigint.trace=true");
+		}
+		Trace.setListener(listener);
+	}
+
+	/**
+	 * @return True if metrics were switched on with -Dbigint.metrics=true
+	 */
+	public static boolean isMetricsEnabled() {
+		return Metrics.ENABLED;
+	}
+
+	/**
+	 * Returns the counters of every instrumented operation: parse, add,
+	 * multiply and toString of BigInteger and PackedBigInteger, and the
+	 * multiplication tiers. Metrics have to be switched on at startup with
+	 * -Dbigint.metrics=true; they are then also published as the MXBean
+	 * bigint:type=Metrics, see MetricsMXBean.
+	 *
+	 * @return Snapshot of each operation's counters, or an empty list if
+	 *         metrics are off
+	 */
+	public static List<OperationMetrics> getMetrics() {
+		return Metrics.snapshot();
+	}
+
+	/**
+	 * Zeroes every metrics counter. Does nothing if metrics are off.
+	 */
+	public static void resetMetrics() {
+		Metrics.reset();
+	}
+
+	private static int checkValueCacheLimit(int limit) {
+		if (limit < 0 || limit > MAX_VALUE_CACHE_LIMIT) {
+			throw new IllegalArgumentException("Value cache limit must be between 0 and "
+					+ MAX_VALUE_CACHE_LIMIT);
+		}
+		return limit;
+	}
+
+	private static int checkThreshold(int limbs) {
+		if (limbs < MIN_THRESHOLD) {
+			throw new IllegalArgumentException("Threshold must be at least " + MIN_THRESHOLD + " limbs");
+		}
+		return limbs;
+	}
+}
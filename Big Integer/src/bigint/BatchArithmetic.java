@@ -0,0 +1,169 @@
+package bigint;
+
+/**
+ * Adds or multiplies many independent pairs of big integers in one call.
+ *
+ * A loop over PackedBigInteger.add or multiply allocates, per pair, a result
+ * one limb longer than it may need (plus, for small products, a long
+ * accumulator) and then often copies it again to trim it. The batch methods
+ * instead compute every result into scratch buffers that are allocated once
+ * per call and shared by all pairs, and allocate each result only once, at
+ * its exact trimmed length.
+ *
+ * Products above the schoolbook range gain nothing from a scratch buffer and
+ * go through PackedBigInteger.multiply. Either way result i is exactly the
+ * result of the single pair method on first[i] and second[i].
+ */
+public final class BatchArithmetic {
+
+	private BatchArithmetic() {
+	}
+
+	/**
+	 * Returns first[i] + second[i] for every i. As with PackedBigInteger.add,
+	 * either operand may be negative.
+	 *
+	 * @param first First operands
+	 * @param second Second operands
+	 * @return New array of the sums
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static PackedBigInteger[] add(PackedBigInteger[] first, PackedBigInteger[] second) {
+		checkPairs(first.length, second.length);
+		int maxLen = 0;
+		for (int i = 0; i < first.length; i++) {
+			maxLen = Math.max(maxLen, Math.max(first[i].limbs.length, second[i].limbs.length));
+		}
+		int[] scratch = new int[maxLen+1];
+		PackedBigInteger[] res = new PackedBigInteger[first.length];
+		for (int i = 0; i < first.length; i++) {
+			PackedBigInteger a = first[i];
+			PackedBigInteger b = second[i];
+			int len;
+			if (a.negative == b.negative) {
+				len = Limbs.add(a.limbs, b.limbs, scratch);
+			} else {
+				// subtract the smaller magnitude from the larger, keeping its sign
+				if (Limbs.compare(a.limbs, b.limbs) < 0) {
+					PackedBigInteger t = a;
+					a = b;
+					b = t;
+				}
+				len = Limbs.subtract(a.limbs, b.limbs, scratch);
+			}
+			res[i] = new PackedBigInteger(a.negative, copy(scratch, len));
+		}
+		return res;
+	}
+
+	/**
+	 * Returns first[i] * second[i] for every i.
+	 *
+	 * @param first First operands
+	 * @param second Second operands
+	 * @return New array of the products
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static PackedBigInteger[] multiply(PackedBigInteger[] first, PackedBigInteger[] second) {
+		checkPairs(first.length, second.length);
+		int threshold = ArithmeticConfig.getKaratsubaThreshold();
+		int maxLen = 0;
+		for (int i = 0; i < first.length; i++) {
+			if (schoolbook(first[i], second[i], threshold)) {
+				maxLen = Math.max(maxLen, first[i].limbs.length + second[i].limbs.length);
+			}
+		}
+		long[] acc = new long[maxLen];
+		PackedBigInteger[] res = new PackedBigInteger[first.length];
+		for (int i = 0; i < first.length; i++) {
+			PackedBigInteger a = first[i];
+			PackedBigInteger b = second[i];
+			if (!schoolbook(a, b, threshold)) {
+				res[i] = PackedBigInteger.multiply(a, b);
+				continue;
+			}
+			int len = a.limbs.length + b.limbs.length;
+			for (int k = 0; k < len; k++) {
+				acc[k] = 0;
+			}
+			Limbs.schoolbook(a.limbs, b.limbs, acc);
+			while (len > 0 && acc[len-1] == 0) {
+				len--;
+			}
+			int[] limbs = len == 0 ? Limbs.ZERO : new int[len];
+			for (int k = 0; k < len; k++) {
+				limbs[k] = (int) acc[k];
+			}
+			res[i] = new PackedBigInteger(a.negative != b.negative, limbs);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns first[i] + second[i] for every i, computed on packed copies of
+	 * the operands.
+	 *
+	 * @param first First operands
+	 * @param second Second operands
+	 * @return New array of the sums
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static BigInteger[] add(BigInteger[] first, BigInteger[] second) {
+		checkPairs(first.length, second.length);
+		return unpack(add(pack(first), pack(second)));
+	}
+
+	/**
+	 * Returns first[i] * second[i] for every i, computed on packed copies of
+	 * the operands.
+	 *
+	 * @param first First operands
+	 * @param second Second operands
+	 * @return New array of the products
+	 * @throws IllegalArgumentException If the arrays differ in length
+	 */
+	public static BigInteger[] multiply(BigInteger[] first, BigInteger[] second) {
+		checkPairs(first.length, second.length);
+		return unpack(multiply(pack(first), pack(second)));
+	}
+
+	/**
+	 * @return True if PackedBigInteger.multiply would take this pair to the
+	 *         schoolbook kernel. Squares keep their own kernel.
+	 */
+	private static boolean schoolbook(PackedBigInteger a, PackedBigInteger b, int threshold) {
+		return a.limbs != b.limbs && Math.min(a.limbs.length, b.limbs.length) < threshold;
+	}
+
+	private static int[] copy(int[] scratch, int len) {
+		if (len == 0) {
+			return Limbs.ZERO;
+		}
+		int[] res = new int[len];
+		System.arraycopy(scratch, 0, res, 0, len);
+		return res;
+	}
+
+	private static PackedBigInteger[] pack(BigInteger[] integers) {
+		PackedBigInteger[] res = new PackedBigInteger[integers.length];
+		for (int i = 0; i < integers.length; i++) {
+			res[i] = PackedBigInteger.from(integers[i]);
+		}
+		return res;
+	}
+
+	private static BigInteger[] unpack(PackedBigInteger[] integers) {
+		BigInteger[] res = new BigInteger[integers.length];
+		for (int i = 0; i < integers.length; i++) {
+			res[i] = integers[i].toBigInteger();
+		}
+		return res;
+	}
+
+	private static void checkPairs(int firstLength, int secondLength) {
+		if (firstLength != secondLength) {
+			throw new IllegalArgumentException("Operand arrays differ in length: "
+					+ firstLength + " and " + secondLength);
+		}
+	}
+}
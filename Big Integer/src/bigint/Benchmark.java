@@ -0,0 +1,331 @@
+package bigint;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro benchmarks for parse, add, subtract, multiply and toString, for both
+ * BigInteger and PackedBigInteger, at operand sizes from 10 to 10^6 digits,
+ * and for the binary form of PackedBigInteger.
+ *
+ * Each benchmark is warmed up and then measured over several fixed length
+ * iterations, and reports throughput, average time per operation and the
+ * allocation rate of the benchmark thread. Operand pairs carry mixed signs, so
+ * add and subtract go through both the magnitude add and the magnitude
+ * subtract paths, and multiply is run on balanced lengths as well as on a
+ * 1000:1 unbalanced pair. The Word cases multiply and divide by a machine
+ * word. The Hex and ByteArray cases convert to and from radix 16 and two's
+ * complement bytes. cache.multiply repeats packed.multiply through an
+ * OperationCache, so it measures the cost of a hit. The batch cases compare
+ * BatchArithmetic against a loop of single pair calls over the same BATCH
+ * pairs; one op is the whole batch. Likewise the reduce cases compare
+ * PackedBigInteger.sum and product over BATCH operands against a left to
+ * right fold.
+ *
+ * Usage: java bigint.Benchmark [filter...]
+ *
+ * Only benchmarks whose name contains one of the filters are run, e.g.
+ * "multiply" or "packed.add". The run is shaped with system properties:
+ *    -Dbigint.bench.warmup=3       warmup iterations
+ *    -Dbigint.bench.iterations=5   measured iterations
+ *    -Dbigint.bench.time=500       length of one iteration in ms
+ *    -Dbigint.bench.maxDigits=1000000   largest operand size
+ */
+public final class Benchmark {
+
+	private static final int WARMUP = Integer.getInteger("bigint.bench.warmup", 3);
+	private static final int ITERATIONS = Integer.getInteger("bigint.bench.iterations", 5);
+	private static final long ITERATION_NANOS =
+			Long.getLong("bigint.bench.time", 500) * 1_000_000L;
+	private static final int MAX_DIGITS = Integer.getInteger("bigint.bench.maxDigits", 1_000_000);
+
+	/**
+	 * Number of operand pairs cycled through, so a single lucky pair (or one
+	 * branch the JIT has specialized for) does not decide the result
+	 */
+	private static final int PAIRS = 4;
+
+	/**
+	 * Number of pairs in one call of the batch benchmarks, which run up to
+	 * MAX_BATCH_DIGITS
+	 */
+	private static final int BATCH = 256;
+	private static final int MAX_BATCH_DIGITS = 10_000;
+
+	/**
+	 * Largest operand size of the product of BATCH operands, whose fold would
+	 * take seconds per op beyond it
+	 */
+	private static final int MAX_PRODUCT_DIGITS = 1000;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Results are folded in here so the JIT cannot drop the operations
+	 */
+	private static volatile int sink;
+
+	private Benchmark() {
+	}
+
+	public static void main(String[] args) {
+		if (THREADS.isThreadAllocatedMemorySupported()) {
+			THREADS.setThreadAllocatedMemoryEnabled(true);
+		}
+		System.out.printf("%-32s %10s %14s %14s %14s %12s%n",
+				"benchmark", "digits", "ops/s", "ns/op", "B/op", "MB/s alloc");
+		for (int digits = 10; digits <= MAX_DIGITS; digits *= 10) {
+			for (Case c : cases(digits)) {
+				if (selected(c.name, args)) {
+					run(c, digits);
+				}
+			}
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	private static boolean selected(String name, String[] filters) {
+		if (filters.length == 0) {
+			return true;
+		}
+		for (String filter : filters) {
+			if (name.contains(filter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the benchmarks for operands of the given number of digits.
+	 */
+	private static List<Case> cases(int digits) {
+		Random random = new Random(digits);
+		String[] a = new String[PAIRS];
+		String[] b = new String[PAIRS];
+		String[] small = new String[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			// alternate the signs: ++, +-, -+, --
+			a[i] = randomDigits(random, digits, (i & 2) != 0);
+			b[i] = randomDigits(random, digits, (i & 1) != 0);
+			small[i] = randomDigits(random, Math.max(1, digits/1000), (i & 1) != 0);
+		}
+
+		BigInteger[] la = new BigInteger[PAIRS];
+		BigInteger[] lb = new BigInteger[PAIRS];
+		BigInteger[] lbNeg = new BigInteger[PAIRS];
+		BigInteger[] lSmall = new BigInteger[PAIRS];
+		PackedBigInteger[] pa = new PackedBigInteger[PAIRS];
+		PackedBigInteger[] pb = new PackedBigInteger[PAIRS];
+		PackedBigInteger[] pbNeg = new PackedBigInteger[PAIRS];
+		PackedBigInteger[] pSmall = new PackedBigInteger[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			la[i] = BigInteger.parse(a[i]);
+			lb[i] = BigInteger.parse(b[i]);
+			lbNeg[i] = BigInteger.parse(negate(b[i]));
+			lSmall[i] = BigInteger.parse(small[i]);
+			pa[i] = PackedBigInteger.parse(a[i]);
+			pb[i] = PackedBigInteger.parse(b[i]);
+			pbNeg[i] = PackedBigInteger.parse(negate(b[i]));
+			pSmall[i] = PackedBigInteger.parse(small[i]);
+		}
+
+		List<Case> cases = new ArrayList<>();
+		cases.add(new Case("list.parse", i -> BigInteger.parse(a[i]).numDigits));
+		cases.add(new Case("list.add", i -> BigInteger.add(la[i], lb[i]).numDigits));
+		// there is no subtract, a - b is a + (-b)
+		cases.add(new Case("list.subtract", i -> BigInteger.add(la[i], lbNeg[i]).numDigits));
+		cases.add(new Case("list.multiply", i -> BigInteger.multiply(la[i], lb[i]).numDigits));
+		cases.add(new Case("list.multiplyUnbalanced",
+				i -> BigInteger.multiply(la[i], lSmall[i]).numDigits));
+		cases.add(new Case("list.toString", i -> la[i].toString().length()));
+		cases.add(new Case("list.multiplyWord", i -> BigInteger.multiply(la[i], 1_000_003L).numDigits));
+		cases.add(new Case("list.divideWord", i -> BigInteger.divide(la[i], 1_000_003).numDigits));
+		cases.add(new Case("list.remainderWord", i -> BigInteger.remainder(la[i], 1_000_003)));
+		cases.add(new Case("list.shiftDecimal", i -> BigInteger.shiftDecimal(la[i], 5).numDigits));
+
+		cases.add(new Case("packed.parse", i -> PackedBigInteger.parse(a[i]).numDigits));
+		cases.add(new Case("packed.add", i -> PackedBigInteger.add(pa[i], pb[i]).numDigits));
+		cases.add(new Case("packed.subtract", i -> PackedBigInteger.add(pa[i], pbNeg[i]).numDigits));
+		cases.add(new Case("packed.multiply", i -> PackedBigInteger.multiply(pa[i], pb[i]).numDigits));
+		cases.add(new Case("packed.multiplyUnbalanced",
+				i -> PackedBigInteger.multiply(pa[i], pSmall[i]).numDigits));
+		cases.add(new Case("packed.toString", i -> pa[i].toString().length()));
+		cases.add(new Case("packed.toStringHex", i -> pa[i].toString(16).length()));
+		String[] hex = new String[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			hex[i] = pa[i].toString(16);
+		}
+		cases.add(new Case("packed.parseHex", i -> PackedBigInteger.parse(hex[i], 16).numDigits));
+		cases.add(new Case("packed.toByteArray", i -> pa[i].toByteArray().length));
+		cases.add(new Case("packed.multiplyWord", i -> PackedBigInteger.multiply(pa[i], 1_000_003L).numDigits));
+		cases.add(new Case("packed.divideWord", i -> PackedBigInteger.divide(pa[i], 1_000_003).numDigits));
+		ByteBuffer[] binary = new ByteBuffer[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			binary[i] = ByteBuffer.allocate((int) pa[i].binarySize());
+			pa[i].writeBinary(binary[i]);
+		}
+		cases.add(new Case("packed.writeBinary", i -> {
+			binary[i].clear();
+			pa[i].writeBinary(binary[i]);
+			return binary[i].position();
+		}));
+		cases.add(new Case("packed.readBinary",
+				i -> PackedBigInteger.readBinary(binary[i].flip()).numDigits));
+
+		// after the first call per pair every multiply is a hit
+		OperationCache cache = new OperationCache(1 << 24);
+		cases.add(new Case("cache.multiply", i -> cache.multiply(pa[i], pb[i]).numDigits));
+
+		if (digits <= MAX_BATCH_DIGITS) {
+			PackedBigInteger[] ba = new PackedBigInteger[BATCH];
+			PackedBigInteger[] bb = new PackedBigInteger[BATCH];
+			for (int i = 0; i < BATCH; i++) {
+				ba[i] = PackedBigInteger.parse(randomDigits(random, digits, random.nextBoolean()));
+				bb[i] = PackedBigInteger.parse(randomDigits(random, digits, random.nextBoolean()));
+			}
+			cases.add(new Case("batch.add", i -> BatchArithmetic.add(ba, bb).length));
+			cases.add(new Case("batch.addLoop", i -> {
+				int acc = 0;
+				for (int k = 0; k < BATCH; k++) {
+					acc += PackedBigInteger.add(ba[k], bb[k]).numDigits;
+				}
+				return acc;
+			}));
+			cases.add(new Case("batch.multiply", i -> BatchArithmetic.multiply(ba, bb).length));
+			cases.add(new Case("batch.multiplyLoop", i -> {
+				int acc = 0;
+				for (int k = 0; k < BATCH; k++) {
+					acc += PackedBigInteger.multiply(ba[k], bb[k]).numDigits;
+				}
+				return acc;
+			}));
+			List<PackedBigInteger> terms = Arrays.asList(ba);
+			cases.add(new Case("reduce.sum", i -> PackedBigInteger.sum(terms).numDigits));
+			cases.add(new Case("reduce.sumLoop", i -> {
+				PackedBigInteger acc = PackedBigInteger.ZERO;
+				for (PackedBigInteger term : terms) {
+					acc = PackedBigInteger.add(acc, term);
+				}
+				return acc.numDigits;
+			}));
+			if (digits <= MAX_PRODUCT_DIGITS) {
+				cases.add(new Case("reduce.product", i -> PackedBigInteger.product(terms).numDigits));
+				cases.add(new Case("reduce.productLoop", i -> {
+					PackedBigInteger acc = PackedBigInteger.valueOf(1);
+					for (PackedBigInteger term : terms) {
+						acc = PackedBigInteger.multiply(acc, term);
+					}
+					return acc.numDigits;
+				}));
+			}
+		}
+		return cases;
+	}
+
+	private static String randomDigits(Random random, int digits, boolean negative) {
+		StringBuilder sb = new StringBuilder(digits+1);
+		if (negative) {
+			sb.append('-');
+		}
+		sb.append((char) ('1' + random.nextInt(9)));
+		for (int i = 1; i < digits; i++) {
+			sb.append((char) ('0' + random.nextInt(10)));
+		}
+		return sb.toString();
+	}
+
+	private static String negate(String integer) {
+		return integer.charAt(0) == '-' ? integer.substring(1) : "-" + integer;
+	}
+
+	/**
+	 * Warms the case up, then measures it and prints one result line.
+	 */
+	private static void run(Case c, int digits) {
+		for (int i = 0; i < WARMUP; i++) {
+			c.iterate();
+		}
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			Iteration it = c.iterate();
+			ops += it.ops;
+			nanos += it.nanos;
+			bytes = bytes < 0 || it.bytes < 0 ? -1 : bytes + it.bytes;
+		}
+		double seconds = nanos / 1e9;
+		System.out.printf("%-32s %10d %14.1f %14.1f %14s %12s%n",
+				c.name, digits, ops / seconds, (double) nanos / ops,
+				bytes < 0 ? "n/a" : String.format("%.1f", (double) bytes / ops),
+				bytes < 0 ? "n/a" : String.format("%.1f", bytes / seconds / (1 << 20)));
+	}
+
+	/**
+	 * One benchmark: an operation on the i-th operand pair, returning a value
+	 * derived from its result.
+	 */
+	private interface Operation {
+		int run(int i);
+	}
+
+	private static final class Iteration {
+		final long ops;
+		final long nanos;
+		/** Bytes allocated by this thread, or -1 where the JVM cannot tell */
+		final long bytes;
+
+		Iteration(long ops, long nanos, long bytes) {
+			this.ops = ops;
+			this.nanos = nanos;
+			this.bytes = bytes;
+		}
+	}
+
+	private static final class Case {
+		final String name;
+		final Operation op;
+
+		Case(String name, Operation op) {
+			this.name = name;
+			this.op = op;
+		}
+
+		/**
+		 * Runs the operation until ITERATION_NANOS have passed, at least once.
+		 * The clock is read every call, which is noise only for the tiniest
+		 * operands.
+		 */
+		Iteration iterate() {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			long end = start + ITERATION_NANOS;
+			long ops = 0;
+			int acc = 0;
+			long now;
+			do {
+				acc += op.run((int) (ops % PAIRS));
+				ops++;
+				now = System.nanoTime();
+			} while (now < end);
+			sink += acc;
+			long bytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+			return new Iteration(ops, now - start, bytes);
+		}
+	}
+
+	private static long allocatedBytes() {
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			return -1;
+		}
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -1,13 +1,48 @@
 package bigint;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
 /**
  * This class encapsulates a BigInteger, i.e. a positive or negative integer with 
  * any number of digits, which overcomes the computer storage length limitation of 
  * an integer.
  *
+ * No static operation of this class modifies its operands, but the fields are
+ * not final and addInPlace updates its accumulator, so a BigInteger shared
+ * between threads needs outside synchronization. PackedBigInteger is the
+ * immutable variant, see PackedBigInteger.from(BigInteger).
+ *
+ * Zero always has a null front and zero digits. valueOf returns shared
+ * canonical instances for small values; every other method, parse and the
+ * arithmetic included, returns a new BigInteger that is safe to use as the
+ * accumulator of addInPlace.
  */
 public class BigInteger {
 
+	/**
+	 * Most digits a value can have and still be handled as a long, with room
+	 * for the sum or (with both operands together) the product of two of them
+	 */
+	private static final int MAX_LONG_DIGITS = 18;
+
+	/**
+	 * Canonical instances of the values -limit to limit, at index value + limit,
+	 * where limit is ArithmeticConfig.getValueCacheLimit()
+	 */
+	private static final BigInteger[] CACHE = buildCache(ArithmeticConfig.getValueCacheLimit());
+
+	/**
+	 * The canonical zero
+	 */
+	public static final BigInteger ZERO = valueOf(0);
+
 	/**
 	 * True if this is a negative integer
 	 */
@@ -29,6 +64,11 @@ public class BigInteger {
 	 */
 	DigitNode front;
 
+	/**
+	 * True for the shared instances in CACHE, which must never be modified
+	 */
+	private boolean canonical;
+
 	/**
 	 * Initializes this integer to a positive number with zero digits, in other
 	 * words this is the 0 (zero) valued integer.
@@ -39,12 +79,76 @@ public class BigInteger {
 		front = null;
 	}
 
+	private static BigInteger[] buildCache(int limit) {
+		BigInteger[] cache = new BigInteger[2*limit+1];
+		for (int i = 0; i < cache.length; i++) {
+			cache[i] = fromLong(i - limit);
+			cache[i].canonical = true;
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns a BigInteger with the given value. Values within
+	 * ArithmeticConfig.getValueCacheLimit() of zero (-1024 to 1024 by default)
+	 * come from a cache of canonical instances built at startup, so asking for
+	 * them allocates nothing.
+	 *
+	 * The canonical instances are shared. None of the operations of this class
+	 * modify them, and addInPlace rejects one as its accumulator.
+	 *
+	 * @param value Value of the integer
+	 * @return BigInteger with the given value
+	 */
+	public static BigInteger valueOf(long value) {
+		int limit = CACHE.length / 2;
+		if (value >= -limit && value <= limit) {
+			return CACHE[(int) value + limit];
+		}
+		return fromLong(value);
+	}
+
+	/**
+	 * Builds a new, non canonical BigInteger with the given value.
+	 */
+	static BigInteger fromLong(long value) {
+		BigInteger res = new BigInteger();
+		res.negative = value < 0;
+		// run on the negative magnitude, which also holds Long.MIN_VALUE
+		long rest = value < 0 ? value : -value;
+		DigitNode last = null;
+		while (rest != 0) {
+			DigitNode node = new DigitNode((int) -(rest % 10), null);
+			if (last == null) {
+				res.front = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+			res.numDigits++;
+			rest /= 10;
+		}
+		return res;
+	}
+
+	/**
+	 * Value of an integer of at most MAX_LONG_DIGITS digits
+	 */
+	private static long longValue(BigInteger integer) {
+		long value = 0;
+		long scale = 1;
+		for (DigitNode ptr = integer.front; ptr != null; ptr = ptr.next) {
+			value += ptr.digit*scale;
+			scale *= 10;
+		}
+		return integer.negative ? -value : value;
+	}
+
 	private static String removeLeadingZeros(String s) {
 		int i = 0;
 		while (i<s.length()-1 && s.charAt(i) == '0') {
 			i++;
 		}
-		System.out.println(s.substring(i));
 		return s.substring(i);
 	}
 
@@ -58,31 +162,6 @@ public class BigInteger {
 		return count;
 	}
 
-	private static DigitNode padNode(DigitNode snode, int diff) {
-		DigitNode ptr = snode;
-
-		while (ptr.next != null) {
-			ptr = ptr.next;
-		}
-
-		while ((diff--) != 0) {
-			ptr.next = new DigitNode(0, null);
-			ptr = ptr.next;
-		}
-		return snode;
-	}
-
-	private static void traverseNodes(DigitNode node) {
-		// utility function to traverse and print nodes of a linked list
-		System.out.println("----------------------------------");
-		DigitNode n = node;
-		while (n != null) {
-			System.out.print(n.digit + " ");
-			n = n.next;
-		}
-		System.out.println("\n----------------------------------");
-	}
-
 	private static DigitNode removeTrailingZeros(DigitNode node) {
 		int last_idx = 0;
 		int i = 0;
@@ -104,6 +183,97 @@ public class BigInteger {
 		return node;
 	}
 
+	/**
+	 * Compares the magnitudes of two big integers. Only equal length integers
+	 * need a walk over their digits, and that walk is a single pass: the last
+	 * differing digit seen is the most significant one.
+	 */
+	private static int compareMagnitudes(BigInteger first, BigInteger second) {
+		if (first.numDigits != second.numDigits) {
+			return first.numDigits < second.numDigits ? -1 : 1;
+		}
+		int cmp = 0;
+		DigitNode ptr1 = first.front;
+		DigitNode ptr2 = second.front;
+		while (ptr1 != null && ptr2 != null) {
+			if (ptr1.digit != ptr2.digit) {
+				cmp = ptr1.digit < ptr2.digit ? -1 : 1;
+			}
+			ptr1 = ptr1.next;
+			ptr2 = ptr2.next;
+		}
+		return cmp;
+	}
+
+	/**
+	 * Adds two magnitudes into a new integer with the given sign, in a single
+	 * pass that creates exactly one node per result digit.
+	 */
+	private static BigInteger addMagnitudes(DigitNode root1, DigitNode root2, boolean negative) {
+		BigInteger res = new BigInteger();
+		DigitNode last = null;
+		int carry = 0;
+		while (root1 != null || root2 != null || carry != 0) {
+			int sum = carry + (root1 != null ? root1.digit : 0) + (root2 != null ? root2.digit : 0);
+			carry = sum >= 10 ? 1 : 0;
+			DigitNode node = new DigitNode(sum - carry*10, null);
+			if (last == null) {
+				res.front = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+			res.numDigits++;
+			if (root1 != null) {
+				root1 = root1.next;
+			}
+			if (root2 != null) {
+				root2 = root2.next;
+			}
+		}
+		res.negative = negative && res.front != null;
+		return res;
+	}
+
+	/**
+	 * Subtracts the smaller magnitude from the larger one into a new integer with
+	 * the given sign, in a single pass. Zero digits are only turned into nodes
+	 * once a non-zero digit follows them, so no insignificant zeros are ever
+	 * allocated and numDigits is known when the pass ends.
+	 */
+	private static BigInteger subtractMagnitudes(DigitNode larger, DigitNode smaller, boolean negative) {
+		BigInteger res = new BigInteger();
+		DigitNode last = null;
+		int pendingZeros = 0;
+		int borrow = 0;
+		while (larger != null) {
+			int diff = larger.digit - borrow - (smaller != null ? smaller.digit : 0);
+			borrow = diff < 0 ? 1 : 0;
+			diff += borrow*10;
+			if (diff == 0) {
+				pendingZeros++;
+			} else {
+				for (; pendingZeros >= 0; pendingZeros--) {
+					DigitNode node = new DigitNode(pendingZeros == 0 ? diff : 0, null);
+					if (last == null) {
+						res.front = node;
+					} else {
+						last.next = node;
+					}
+					last = node;
+					res.numDigits++;
+				}
+				pendingZeros = 0;
+			}
+			larger = larger.next;
+			if (smaller != null) {
+				smaller = smaller.next;
+			}
+		}
+		res.negative = negative && res.front != null;
+		return res;
+	}
+
 	/**
 	 * Parses an input integer string into a corresponding BigInteger instance.
 	 * A correctly formatted integer would have an optional sign as the first
@@ -137,7 +307,21 @@ public class BigInteger {
 	 */
 	public static BigInteger parse(String integer)
 			throws IllegalArgumentException {
+		if (!Metrics.ENABLED) {
+			return parseUnmetered(integer);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		BigInteger res = parseUnmetered(integer);
+		Metrics.record(Metrics.LIST_PARSE, Metrics.NONE, integer.length(), start, bytes);
+		return res;
+	}
+
+	private static BigInteger parseUnmetered(String integer) {
 		String str = integer.trim();
+		if (str.isEmpty()) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
 		BigInteger bigInt = new BigInteger();
 
 		// get rid of zeros in front and check format
@@ -155,6 +339,24 @@ public class BigInteger {
 			throw new IllegalArgumentException("Incorrect format");
 		}
 
+		if (Trace.ENABLED) {
+			Trace.emit("parse", str);
+		}
+		if (str.isEmpty()) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
+		if (str.length() <= MAX_LONG_DIGITS) {
+			// short enough for a long
+			long value = 0;
+			for (int i = 0; i < str.length(); i++) {
+				char c = str.charAt(i);
+				if (!Character.isDigit(c)) {
+					throw new IllegalArgumentException("Incorrect format");
+				}
+				value = value*10 + Character.getNumericValue(c);
+			}
+			return fromLong(bigInt.negative ? -value : value);
+		}
 		bigInt.numDigits = str.length();
 
 		// create linked list root
@@ -185,162 +387,161 @@ public class BigInteger {
 	 * @return Result big integer
 	 */
 	public static BigInteger add(BigInteger first, BigInteger second) {
+		if (!Metrics.ENABLED) {
+			return addUnmetered(first, second);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		BigInteger res = addUnmetered(first, second);
+		Metrics.record(Metrics.LIST_ADD, Metrics.NONE,
+				Math.max(first.numDigits, second.numDigits), start, bytes);
+		return res;
+	}
 
-		boolean negative;
-
-		if ((first.negative && second.negative) || (!first.negative && !second.negative)) {
+	private static BigInteger addUnmetered(BigInteger first, BigInteger second) {
+		if (first.numDigits <= MAX_LONG_DIGITS && second.numDigits <= MAX_LONG_DIGITS) {
+			return fromLong(longValue(first) + longValue(second));
+		}
+		if (first.negative == second.negative) {
 			// ADDITION
-			DigitNode result = null;
-			DigitNode prev = null;
-			DigitNode temp = null;
-			int carry = 0;
-			int sum = 0;
-
-
-			BigInteger res = new BigInteger();
-
-			negative = first.negative;
-			DigitNode root1 = first.front;
-			DigitNode root2 = second.front;
-			while (root1 != null || root2 != null) {
-				// get sum of digits
-				sum = carry + (root1 != null ? root1.digit : 0) + (root2 != null ? root2.digit : 0);
-				// if sum >= 10, carry 1
-				carry = (sum >= 10) ? 1 : 0;
-				// account for possible carrying
-				sum = sum % 10;
-				// create node for sum
-				temp = new DigitNode(sum, null);
-				// if this is the root, set root as the sum
-				if (result == null) {
-					result = temp;
-					// otherwise add as next node
+			return addMagnitudes(first.front, second.front, first.negative);
+		}
+		// SUBTRACTION of the smaller magnitude from the larger one, which
+		// decides the sign of the result
+		int cmp = compareMagnitudes(first, second);
+		if (Trace.ENABLED) {
+			Trace.emit("add", "subtracting, magnitude comparison " + cmp + ": "
+					+ Trace.digits(first.front) + " | " + Trace.digits(second.front));
+		}
+		if (cmp == 0) {
+			return new BigInteger();
+		}
+		if (cmp > 0) {
+			return subtractMagnitudes(first.front, second.front, first.negative);
+		}
+		return subtractMagnitudes(second.front, first.front, second.negative);
+	}
+
+	/**
+	 * Adds the term into the accumulator, REUSING the accumulator's digit nodes
+	 * instead of building a new BigInteger. New nodes are created only when the
+	 * result has more digits than the accumulator held, so summing many terms
+	 * allocates almost nothing once the running total stops growing.
+	 *
+	 * The term is not modified. It must not share digit nodes with the
+	 * accumulator, unless it is the accumulator itself.
+	 *
+	 * @param accumulator Big integer that is overwritten with the sum
+	 * @param term Big integer to add
+	 * @return The accumulator
+	 * @throws IllegalArgumentException If the accumulator is a shared canonical
+	 *         instance from valueOf (or ZERO), which must never be modified
+	 */
+	public static BigInteger addInPlace(BigInteger accumulator, BigInteger term) {
+		if (accumulator.canonical) {
+			throw new IllegalArgumentException("Canonical instances cannot be modified");
+		}
+		if (term.front == null) {
+			return accumulator;
+		}
+		if (accumulator.front == null || accumulator.negative == term.negative) {
+			accumulator.negative = term.negative;
+			accumulateMagnitude(accumulator, term.front);
+			return accumulator;
+		}
+		int cmp = compareMagnitudes(accumulator, term);
+		if (cmp == 0) {
+			accumulator.front = null;
+			accumulator.numDigits = 0;
+			accumulator.negative = false;
+		} else if (cmp > 0) {
+			reduceMagnitude(accumulator, term.front, false);
+		} else {
+			reduceMagnitude(accumulator, term.front, true);
+			accumulator.negative = term.negative;
+		}
+		return accumulator;
+	}
+
+	/**
+	 * accumulator.magnitude += magnitude, appending nodes only past the end of
+	 * the accumulator's list.
+	 */
+	private static void accumulateMagnitude(BigInteger accumulator, DigitNode root) {
+		DigitNode ptr = accumulator.front;
+		DigitNode last = null;
+		int count = 0;
+		int carry = 0;
+		while (root != null || carry != 0) {
+			if (ptr == null) {
+				ptr = new DigitNode(0, null);
+				if (last == null) {
+					accumulator.front = ptr;
 				} else {
-					prev.next = temp;
-				}
-				// update previous pointer
-				prev = temp;
-				// move to next digits
-				if (root1 != null) {
-					root1 = root1.next;
+					last.next = ptr;
 				}
-				if (root2 != null) {
-					root2 = root2.next;
-				}
-			}
-			// if we had to carry, add it to the end of the result
-			if (carry > 0) {
-				temp.next = new DigitNode(carry, null);
 			}
-			res.front = result;
-			if (negative) {
-				res.negative = true;
+			int sum = ptr.digit + carry + (root != null ? root.digit : 0);
+			carry = sum >= 10 ? 1 : 0;
+			ptr.digit = sum - carry*10;
+			last = ptr;
+			ptr = ptr.next;
+			count++;
+			if (root != null) {
+				root = root.next;
 			}
-			res.numDigits = getNumDigits(res.front);
-			return res;
-		} else {
-			// SUBTRACTION
-
-			// first figure out which is greater
-			DigitNode temp1 = first.front;
-			DigitNode temp2 = second.front;
-
-			DigitNode lnode = null;
-			DigitNode snode = null;
-
-			if (first.numDigits > second.numDigits) {
-				lnode = first.front;
-				snode = second.front;
-				negative = first.negative;
-			} else if (first.numDigits < second.numDigits) {
-				lnode = second.front;
-				snode = first.front;
-				negative = second.negative;
-			} else {
-				System.out.println("SAME LENGTH");
-				DigitNode t1 = temp1;
-				DigitNode t2 = temp2;
-				int d1 = 0;
-				int d2 = 0;
-				while (t1 != null && t2!=null) {
-					if (t1.digit != t2.digit) {
-						d1 = t1.digit;
-						d2 = t2.digit;
-					}
-					t1 = t1.next;
-					t2 = t2.next;
-				}
-				if (d1 == 0 && d2==0) {
-					return new BigInteger();
-				}
-				lnode = d1 > d2 ? temp1 : temp2;
-				snode = d1 > d2 ? temp2 : temp1;
-//				traverseNodes(lnode);
-//				traverseNodes(snode);
+		}
+		accumulator.numDigits = Math.max(accumulator.numDigits, count);
+	}
 
-				negative = first.front == lnode ? first.negative : second.negative;
+	/**
+	 * Overwrites the accumulator's magnitude with the difference between it and
+	 * the given magnitude: accumulator - magnitude, or magnitude - accumulator
+	 * when reversed. The caller guarantees the difference is positive. Most
+	 * significant zeros are cut off the list afterwards.
+	 */
+	private static void reduceMagnitude(BigInteger accumulator, DigitNode root, boolean reversed) {
+		DigitNode ptr = accumulator.front;
+		DigitNode last = null;
+		DigitNode lastNonZero = null;
+		int count = 0;
+		int digits = 0;
+		int borrow = 0;
+		while (ptr != null || root != null) {
+			if (ptr == null) {
+				ptr = new DigitNode(0, null);
+				last.next = ptr;
 			}
-
-			int diff = Math.abs(first.numDigits - second.numDigits);
-			if (diff != 0) {
-				snode = padNode(snode, diff);
+			int mine = ptr.digit;
+			int theirs = root != null ? root.digit : 0;
+			int diff = (reversed ? theirs - mine : mine - theirs) - borrow;
+			borrow = diff < 0 ? 1 : 0;
+			ptr.digit = diff + borrow*10;
+			count++;
+			if (ptr.digit != 0) {
+				lastNonZero = ptr;
+				digits = count;
 			}
-
-			traverseNodes(lnode);
-			traverseNodes(snode);
-
-			BigInteger ans = new BigInteger();
-			ans.front = new DigitNode(0, null);
-			DigitNode ansPtr = ans.front;
-
-			boolean borrow = false;
-
-			while (lnode != null && snode != null) {
-				int d1 = lnode.digit;
-				int d2 = snode.digit;
-				int resDig = 0;
-				// if we had to borrow previously, decrement digit
-				if (borrow) {
-					d1 --;
-					borrow = false;
-				}
-
-				if (d1 > d2) {
-					// no borrow, just subtract
-					resDig = d1 - d2;
-				} else if (d1 < d2){
-					// we need to borrow
-					borrow = true;
-					resDig = 10 + d1 - d2;
-				}
-				// set current digit to sum
-				ansPtr.digit = resDig;
-				// check if we have more sums to calc before creating next node
-				if (lnode.next != null || snode.next != null){
-					ansPtr.next = new DigitNode(resDig, null);
-				}
-				// move pointers along
-				ansPtr = ansPtr.next;
-				lnode = lnode.next;
-				snode = snode.next;
-				// debug print
-//				System.out.println("RESDIG :::::::::::::::::::::::::::::::::::::: " + resDig);
+			last = ptr;
+			ptr = ptr.next;
+			if (root != null) {
+				root = root.next;
 			}
-			ans.negative = negative;
-			// debug
-//			traverseNodes(ans.front);
-
-			ans.front = removeTrailingZeros(ans.front);
-			ans.numDigits = getNumDigits(ans.front);
-//			traverseNodes(ans.front);
-			return ans;
 		}
+		lastNonZero.next = null;
+		accumulator.numDigits = digits;
 	}
 
 	/**
 	 * Returns the BigInteger obtained by multiplying the first big integer
 	 * with the second big integer
 	 *
+	 * Small operands are multiplied digit by digit on the linked lists. Once the
+	 * smaller operand reaches ArithmeticConfig.getKaratsubaThreshold() limbs of
+	 * nine digits, both are packed and multiplied by PackedBigInteger, which
+	 * switches to Karatsuba and Toom-Cook for large operands. Multiplying an
+	 * integer by itself is handed to square.
+	 *
 	 * This method DOES NOT MODIFY either of the input big integers
 	 *
 	 * @param first First big integer
@@ -348,86 +549,582 @@ public class BigInteger {
 	 * @return A new BigInteger which is the product of the first and second big integers
 	 */
 	public static BigInteger multiply(BigInteger first, BigInteger second) {
+		if (!Metrics.ENABLED) {
+			return multiplyUnmetered(first, second);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		BigInteger res = multiplyUnmetered(first, second);
+		Metrics.record(Metrics.LIST_MULTIPLY, Metrics.NONE,
+				Math.max(first.numDigits, second.numDigits), start, bytes);
+		return res;
+	}
+
+	private static BigInteger multiplyUnmetered(BigInteger first, BigInteger second) {
+		if (first.front == null || second.front == null) {
+			return new BigInteger();
+		}
+		if (first.numDigits + second.numDigits <= MAX_LONG_DIGITS) {
+			return fromLong(longValue(first) * longValue(second));
+		}
 		boolean negative = first.negative != second.negative;
 		BigInteger res = new BigInteger();
-		if (first.front == null || second.front==null) {
-			return res;
+		if (first == second) {
+			return squareUnmetered(first);
 		}
-		res.front = new DigitNode(0, null);
-		int trailingZeros = 0;
-		DigitNode ptr2 = second.front;
-		while (ptr2 != null) {
-			BigInteger mult = new BigInteger();
-			mult.front = new DigitNode(0, null);
-			DigitNode multPtr = mult.front;
-			for (int j=0; j<trailingZeros; j++) {
-				multPtr.digit = 0;
-				multPtr.next = new DigitNode(0, null);
-				multPtr = multPtr.next;
+		int smaller = Math.min(first.numDigits, second.numDigits);
+		if (smaller >= ArithmeticConfig.getKaratsubaThreshold()*Limbs.DIGITS_PER_LIMB) {
+			if (Trace.ENABLED) {
+				Trace.emit("multiply", "packing " + first.numDigits + " x " + second.numDigits + " digits");
 			}
+			return PackedBigInteger.multiply(PackedBigInteger.from(first),
+					PackedBigInteger.from(second)).toBigInteger();
+		}
+
+		// accumulate each row straight into the result, so at most
+		// first.numDigits + second.numDigits nodes are ever created
+		res.front = new DigitNode(0, null);
+		DigitNode row = res.front;
+		for (DigitNode ptr2 = second.front; ptr2 != null; ptr2 = ptr2.next) {
+			DigitNode resPtr = row;
 			int carry = 0;
 			DigitNode ptr1 = first.front;
-			while (ptr1 != null) {
-				int product = ptr1.digit*ptr2.digit+carry;
+			while (ptr1 != null || carry != 0) {
+				int product = resPtr.digit + carry + (ptr1 != null ? ptr1.digit*ptr2.digit : 0);
 				carry = product/10;
-				multPtr.digit = product%10;
-				if(ptr1.next != null) {
-					multPtr.next = new DigitNode(0, null);
-					multPtr = multPtr.next;
-				} else {
-					if(carry != 0)
-						multPtr.next = new DigitNode(carry,null);
-					break;
+				resPtr.digit = product%10;
+				if (ptr1 != null) {
+					ptr1 = ptr1.next;
+				}
+				if (ptr1 != null || carry != 0) {
+					if (resPtr.next == null) {
+						resPtr.next = new DigitNode(0, null);
+					}
+					resPtr = resPtr.next;
 				}
-				ptr1 = ptr1.next;
 			}
-			ptr2 = ptr2.next;
-			trailingZeros++;
-			res = add(res, mult);
+			if (ptr2.next != null) {
+				if (row.next == null) {
+					row.next = new DigitNode(0, null);
+				}
+				row = row.next;
+			}
 		}
 		res.negative = negative;
 
-		// REMOVE TRAILING ZEROS
-		int last_idx = 0;
+		res.front = removeTrailingZeros(res.front);
+		res.numDigits = getNumDigits(res.front);
+		return res;
+	}
+
+
+	/**
+	 * Returns the square of a big integer. The digits are packed and squared by
+	 * PackedBigInteger.square, which computes each cross product only once.
+	 *
+	 * This method DOES NOT MODIFY the input big integer
+	 *
+	 * @param integer Big integer to square
+	 * @return A new BigInteger which is integer * integer
+	 */
+	public static BigInteger square(BigInteger integer) {
+		if (!Metrics.ENABLED) {
+			return squareUnmetered(integer);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		BigInteger res = squareUnmetered(integer);
+		Metrics.record(Metrics.LIST_MULTIPLY, Metrics.NONE, integer.numDigits, start, bytes);
+		return res;
+	}
+
+	private static BigInteger squareUnmetered(BigInteger integer) {
+		if (integer.front == null) {
+			return new BigInteger();
+		}
+		return PackedBigInteger.square(PackedBigInteger.from(integer)).toBigInteger();
+	}
+
+	/**
+	 * Returns the sum of all the terms, each of which may be negative. The
+	 * terms are packed and summed by PackedBigInteger.sum in a single carry
+	 * pass, instead of being added one at a time.
+	 *
+	 * This method DOES NOT MODIFY any of the terms
+	 *
+	 * @param terms Big integers to add
+	 * @return A new BigInteger which is the sum, 0 for no terms
+	 */
+	public static BigInteger sum(Collection<BigInteger> terms) {
+		return Reduction.sum(pack(terms)).toBigInteger();
+	}
+
+	/**
+	 * Returns the product of all the factors, e.g. of 1 to n for n!. The
+	 * factors are packed and multiplied along the balanced product tree of
+	 * PackedBigInteger.product.
+	 *
+	 * This method DOES NOT MODIFY any of the factors
+	 *
+	 * @param factors Big integers to multiply
+	 * @return A new BigInteger which is the product, 1 for no factors
+	 */
+	public static BigInteger product(Collection<BigInteger> factors) {
+		return Reduction.product(pack(factors)).toBigInteger();
+	}
+
+	private static PackedBigInteger[] pack(Collection<BigInteger> integers) {
+		PackedBigInteger[] res = new PackedBigInteger[integers.size()];
 		int i = 0;
-		DigitNode ref = res.front;
-		while (ref != null) {
-			if (ref.digit != 0) {
-				last_idx = i;
+		for (BigInteger integer : integers) {
+			res[i++] = PackedBigInteger.from(integer);
+		}
+		return res;
+	}
+
+	/**
+	 * Largest factor multiply(BigInteger, long) handles in its digit pass: a
+	 * digit times the factor, plus a carry below the factor, must fit a long
+	 */
+	private static final long MAX_WORD_FACTOR = Long.MAX_VALUE / 10;
+
+	/**
+	 * Multiplies a big integer by a machine word in a single pass over its
+	 * digits, with a long carry, creating one node per digit of the result.
+	 * (multiply(BigInteger, BigInteger) would build a row per digit of the
+	 * factor.) Factors beyond MAX_WORD_FACTOR in size go through the general
+	 * multiply.
+	 *
+	 * This method DOES NOT MODIFY the input big integer
+	 *
+	 * @param integer Big integer to multiply
+	 * @param factor Factor, which may be negative
+	 * @return A new BigInteger which is integer * factor
+	 */
+	public static BigInteger multiply(BigInteger integer, long factor) {
+		if (integer.front == null || factor == 0) {
+			return new BigInteger();
+		}
+		if (factor > MAX_WORD_FACTOR || factor < -MAX_WORD_FACTOR) {
+			return multiply(integer, valueOf(factor));
+		}
+		long f = Math.abs(factor);
+		if (integer.numDigits + digitCount(f) <= MAX_LONG_DIGITS) {
+			return fromLong(longValue(integer) * factor);
+		}
+		BigInteger res = new BigInteger();
+		DigitNode last = null;
+		long carry = 0;
+		// the top digit of the result is the last carry, or a non-zero digit
+		// times f, so no zero node is created at the top
+		for (DigitNode ptr = integer.front; ptr != null || carry != 0; ) {
+			long t = carry + (ptr != null ? ptr.digit*f : 0);
+			carry = t / 10;
+			DigitNode node = new DigitNode((int) (t - carry*10), null);
+			if (last == null) {
+				res.front = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+			res.numDigits++;
+			if (ptr != null) {
+				ptr = ptr.next;
 			}
-			i++;
-			ref = ref.next;
 		}
-		int n = 0;
-		DigitNode temp = res.front;
-		while (n != last_idx) {
-			temp = temp.next;
-			n++;
+		res.negative = integer.negative != factor < 0;
+		return res;
+	}
+
+	/**
+	 * Number of decimal digits of a positive long
+	 */
+	private static int digitCount(long value) {
+		int count = 1;
+		while (value >= 10) {
+			value /= 10;
+			count++;
 		}
-		temp.next = null;
+		return count;
+	}
 
-		res.front = removeTrailingZeros(res.front);
-		res.numDigits = getNumDigits(res.front);
-//		traverseNodes(res.front);
+	/**
+	 * Divides a big integer by a machine word, truncating toward zero. The
+	 * list runs from the least significant digit, so the digits are packed
+	 * first and divided a limb at a time by PackedBigInteger.divide; both
+	 * passes are linear.
+	 *
+	 * This method DOES NOT MODIFY the input big integer
+	 *
+	 * @param integer Dividend
+	 * @param divisor Divisor, which may be negative
+	 * @return A new BigInteger which is the quotient
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static BigInteger divide(BigInteger integer, int divisor) {
+		if (divisor == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		if (integer.numDigits <= MAX_LONG_DIGITS) {
+			return fromLong(longValue(integer) / divisor);
+		}
+		return PackedBigInteger.divide(PackedBigInteger.from(integer), divisor).toBigInteger();
+	}
+
+	/**
+	 * Returns the remainder of a big integer divided by a machine word, which
+	 * takes the sign of the dividend as in divMod. The digits are read least
+	 * significant first, nine at a time into a limb, and the remainder is
+	 * sum(limb * 10^9k) mod divisor with the power kept reduced. Nothing is
+	 * allocated.
+	 *
+	 * @param integer Dividend
+	 * @param divisor Divisor, which may be negative
+	 * @return integer - divide(integer, divisor) * divisor
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static int remainder(BigInteger integer, int divisor) {
+		if (divisor == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		long d = Math.abs((long) divisor);
+		long rem = 0;
+		long scale = 1 % d;
+		DigitNode ptr = integer.front;
+		while (ptr != null) {
+			long limb = 0;
+			for (int pos = 0, unit = 1; pos < Limbs.DIGITS_PER_LIMB && ptr != null; pos++, unit *= 10) {
+				limb += ptr.digit*unit;
+				ptr = ptr.next;
+			}
+			// limb * scale stays below 10^9 * 2^31
+			rem = (rem + limb*scale) % d;
+			scale = scale*Limbs.BASE % d;
+		}
+		return (int) (integer.negative ? -rem : rem);
+	}
+
+	/**
+	 * Shifts the decimal digits of the integer, multiplying it by 10^places if
+	 * places is positive, and dividing it by 10^-places, truncated toward zero,
+	 * if places is negative.
+	 *
+	 * The list holds the least significant digit first, so a left shift puts
+	 * places zero nodes in front of a copy of the operand's nodes, in O(places)
+	 * plus one linear pass, and a right shift walks past -places nodes and
+	 * copies the rest. The result never shares nodes with the operand, so
+	 * either one may be passed to addInPlace afterwards.
+	 *
+	 * This method DOES NOT MODIFY the input big integer
+	 *
+	 * @param integer Big integer to shift
+	 * @param places Number of decimal places to shift left, or right if negative
+	 * @return A new BigInteger equal to integer * 10^places
+	 * @throws ArithmeticException If the result would have more than Integer.MAX_VALUE digits
+	 */
+	public static BigInteger shiftDecimal(BigInteger integer, int places) {
+		if (integer.front == null) {
+			return new BigInteger();
+		}
+		DigitNode from = integer.front;
+		int kept = integer.numDigits;
+		if (places < 0) {
+			// -places cannot overflow as a long
+			long right = -(long) places;
+			if (right >= integer.numDigits) {
+				return new BigInteger();
+			}
+			for (long i = 0; i < right; i++) {
+				from = from.next;
+			}
+			kept -= (int) right;
+			places = 0;
+		} else if (integer.numDigits > Integer.MAX_VALUE - places) {
+			throw new ArithmeticException("Shift result too large");
+		}
+		BigInteger res = new BigInteger();
+		res.negative = integer.negative;
+		res.numDigits = kept + places;
+		DigitNode last = null;
+		for (int i = 0; i < places; i++) {
+			DigitNode node = new DigitNode(0, null);
+			if (last == null) {
+				res.front = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+		}
+		for (DigitNode ptr = from; ptr != null; ptr = ptr.next) {
+			DigitNode node = new DigitNode(ptr.digit, null);
+			if (last == null) {
+				res.front = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+		}
 		return res;
 	}
 
+	/**
+	 * Returns the quotient of the first big integer divided by the second,
+	 * truncated toward zero. The operands are packed and divided by
+	 * PackedBigInteger.divide.
+	 *
+	 * This method DOES NOT MODIFY either of the input big integers
+	 *
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return A new BigInteger which is the quotient
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static BigInteger divide(BigInteger first, BigInteger second) {
+		return PackedBigInteger.divide(PackedBigInteger.from(first),
+				PackedBigInteger.from(second)).toBigInteger();
+	}
+
+	/**
+	 * Returns first mod second, which is never negative. See PackedBigInteger.mod.
+	 *
+	 * @param first Dividend
+	 * @param second Modulus, which must be positive
+	 * @return A new BigInteger in the range [0, second)
+	 * @throws ArithmeticException If the modulus is not positive
+	 */
+	public static BigInteger mod(BigInteger first, BigInteger second) {
+		return PackedBigInteger.mod(PackedBigInteger.from(first),
+				PackedBigInteger.from(second)).toBigInteger();
+	}
+
+	/**
+	 * Returns the quotient, truncated toward zero, and the remainder, with the
+	 * sign of the dividend, of the first big integer divided by the second.
+	 * See PackedBigInteger.divMod.
+	 *
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return Array holding the quotient at index 0 and the remainder at index 1
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static BigInteger[] divMod(BigInteger first, BigInteger second) {
+		PackedBigInteger[] qr = PackedBigInteger.divMod(PackedBigInteger.from(first),
+				PackedBigInteger.from(second));
+		return new BigInteger[] {qr[0].toBigInteger(), qr[1].toBigInteger()};
+	}
+
+	/**
+	 * Returns base raised to the given power. See PackedBigInteger.pow.
+	 *
+	 * @param base Big integer to raise
+	 * @param exponent Power, which must not be negative
+	 * @return A new BigInteger which is base^exponent
+	 * @throws ArithmeticException If the exponent is negative
+	 */
+	public static BigInteger pow(BigInteger base, int exponent) {
+		return PackedBigInteger.pow(PackedBigInteger.from(base), exponent).toBigInteger();
+	}
+
+	/**
+	 * Returns base^exponent mod modulus. See PackedBigInteger.modPow.
+	 *
+	 * @param base Big integer to raise, which may be negative
+	 * @param exponent Power, which must not be negative
+	 * @param modulus Modulus, which must be positive
+	 * @return A new BigInteger in the range [0, modulus)
+	 * @throws ArithmeticException If the exponent is negative or the modulus is not positive
+	 */
+	public static BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) {
+		return PackedBigInteger.modPow(PackedBigInteger.from(base), PackedBigInteger.from(exponent),
+				PackedBigInteger.from(modulus)).toBigInteger();
+	}
+
+	/**
+	 * Returns the decimal digits of the magnitude, least significant first,
+	 * walking the linked list as they are taken. Reading only the low order
+	 * digits touches only their nodes, and no memory is allocated beyond the
+	 * iterator. Zero has no digits. The integer must not be modified (with
+	 * addInPlace) while the iterator is in use.
+	 *
+	 * @return Iterator over the digits
+	 */
+	public PrimitiveIterator.OfInt leastSignificantDigits() {
+		return new PrimitiveIterator.OfInt() {
+			private DigitNode next = front;
+
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			public int nextInt() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				int digit = next.digit;
+				next = next.next;
+				return digit;
+			}
+		};
+	}
+
+	/**
+	 * Returns the decimal digits of the magnitude, most significant first. The
+	 * list runs the other way, so the digits are first packed into limbs
+	 * (about 4 bytes per 9 digits, still far less than a string) and read from
+	 * there. See PackedBigInteger.mostSignificantDigits.
+	 *
+	 * @return Iterator over the digits
+	 */
+	public PrimitiveIterator.OfInt mostSignificantDigits() {
+		return PackedBigInteger.from(this).mostSignificantDigits();
+	}
+
+	/**
+	 * Returns a stream of the decimal digits of the magnitude, most
+	 * significant first, which may be made parallel. Like
+	 * mostSignificantDigits, it works on a packed copy. See
+	 * PackedBigInteger.digits.
+	 *
+	 * @return Stream of the digits
+	 */
+	public IntStream digits() {
+		return PackedBigInteger.from(this).digits();
+	}
+
+	/**
+	 * Writes this integer to the buffer in the binary form of PackedBigInteger,
+	 * which takes about 4 bytes per 9 digits instead of one byte per digit and
+	 * is read back in linear time. See PackedBigInteger.writeBinary.
+	 *
+	 * @param out Destination buffer, which may be direct or memory-mapped
+	 * @throws java.nio.BufferOverflowException If the value does not fit
+	 */
+	public void writeBinary(ByteBuffer out) {
+		PackedBigInteger.from(this).writeBinary(out);
+	}
+
+	/**
+	 * Reads an integer written by writeBinary. See PackedBigInteger.readBinary.
+	 *
+	 * @param in Source buffer, which may be direct or memory-mapped
+	 * @return A new BigInteger read from the buffer
+	 * @throws IllegalArgumentException If the bytes are not a valid value
+	 */
+	public static BigInteger readBinary(ByteBuffer in) {
+		return PackedBigInteger.readBinary(in).toBigInteger();
+	}
+
+	/**
+	 * Writes this integer to a channel, such as a FileChannel, in the binary
+	 * form of PackedBigInteger. See PackedBigInteger.writeBinary.
+	 *
+	 * @param out Destination channel, in blocking mode
+	 * @throws IOException If the channel fails
+	 */
+	public void writeBinary(WritableByteChannel out) throws IOException {
+		PackedBigInteger.from(this).writeBinary(out);
+	}
+
+	/**
+	 * Reads an integer written by writeBinary from a channel. See
+	 * PackedBigInteger.readBinary.
+	 *
+	 * @param in Source channel, in blocking mode
+	 * @return A new BigInteger read from the channel
+	 * @throws IOException If the channel fails or ends inside the value
+	 * @throws IllegalArgumentException If the bytes are not a valid value
+	 */
+	public static BigInteger readBinary(ReadableByteChannel in) throws IOException {
+		return PackedBigInteger.readBinary(in).toBigInteger();
+	}
+
+	/**
+	 * Parses an integer written in the given radix, e.g. "-ff" in radix 16.
+	 * See PackedBigInteger.parse(CharSequence, int).
+	 *
+	 * @param integer Integer string that is to be parsed
+	 * @param radix Radix, from Character.MIN_RADIX to Character.MAX_RADIX
+	 * @return BigInteger instance that stores the input integer.
+	 * @throws IllegalArgumentException If input is incorrectly formatted, or the radix is out of range
+	 */
+	public static BigInteger parse(String integer, int radix)
+			throws IllegalArgumentException {
+		if (radix == 10) {
+			return parse(integer);
+		}
+		return PackedBigInteger.parse(integer, radix).toBigInteger();
+	}
+
+	/**
+	 * Returns this integer written in the given radix. See
+	 * PackedBigInteger.toString(int).
+	 *
+	 * @param radix Radix, from Character.MIN_RADIX to Character.MAX_RADIX
+	 * @return The integer in the radix
+	 * @throws IllegalArgumentException If the radix is out of range
+	 */
+	public String toString(int radix) {
+		if (radix == 10) {
+			return toString();
+		}
+		return PackedBigInteger.from(this).toString(radix);
+	}
+
+	/**
+	 * Returns this integer as a big-endian two's complement byte array, the
+	 * same bytes as java.math.BigInteger.toByteArray. See
+	 * PackedBigInteger.toByteArray.
+	 *
+	 * @return New array of at least one byte
+	 */
+	public byte[] toByteArray() {
+		return PackedBigInteger.from(this).toByteArray();
+	}
+
+	/**
+	 * Returns the integer whose big-endian two's complement form is bytes. See
+	 * PackedBigInteger.fromByteArray.
+	 *
+	 * @param bytes Two's complement bytes, which are not modified
+	 * @return A new BigInteger with the value of the bytes
+	 * @throws IllegalArgumentException If the array is empty
+	 */
+	public static BigInteger fromByteArray(byte[] bytes) {
+		return PackedBigInteger.fromByteArray(bytes).toBigInteger();
+	}
 
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
+		if (!Metrics.ENABLED) {
+			return toStringUnmetered();
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		String res = toStringUnmetered();
+		Metrics.record(Metrics.LIST_TO_STRING, Metrics.NONE, numDigits, start, bytes);
+		return res;
+	}
+
+	private String toStringUnmetered() {
 		if (front == null) {
 			return "0";
 		}
-		String retval = front.digit + "";
-		for (DigitNode curr = front.next; curr != null; curr = curr.next) {
-			retval = curr.digit + retval;
+		int count = 0;
+		for (DigitNode curr = front; curr != null; curr = curr.next) {
+			count++;
+		}
+		// the list runs from the least significant digit, so fill from the back
+		int len = count + (negative ? 1 : 0);
+		char[] buf = new char[len];
+		int pos = len;
+		for (DigitNode curr = front; curr != null; curr = curr.next) {
+			buf[--pos] = (char) ('0' + curr.digit);
 		}
-
 		if (negative) {
-			retval = '-' + retval;
+			buf[0] = '-';
 		}
-		return retval;
+		return new String(buf);
 	}
 }
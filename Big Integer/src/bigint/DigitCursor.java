@@ -0,0 +1,117 @@
+package bigint;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Iterates over a range of the decimal digits of a base 10^9 magnitude,
+ * either least or most significant first, without building a string.
+ *
+ * Digits are numbered from 0 at the least significant end. The cursor serves
+ * both as an iterator and as a spliterator: splitting hands out the half of
+ * the remaining range that comes first in the cursor's order, so a parallel
+ * stream over it keeps the digits in order.
+ */
+final class DigitCursor implements PrimitiveIterator.OfInt, Spliterator.OfInt {
+
+	private static final int CHARACTERISTICS =
+			ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+	private final int[] limbs;
+	private final boolean mostSignificantFirst;
+
+	/**
+	 * Remaining digits are [from, to)
+	 */
+	private int from;
+	private int to;
+
+	DigitCursor(int[] limbs, int from, int to, boolean mostSignificantFirst) {
+		this.limbs = limbs;
+		this.from = from;
+		this.to = to;
+		this.mostSignificantFirst = mostSignificantFirst;
+	}
+
+	/**
+	 * Returns digit i of the magnitude, 0 being the least significant.
+	 */
+	static int digit(int[] limbs, int i) {
+		int limb = limbs[i / Limbs.DIGITS_PER_LIMB];
+		return limb / PackedBigInteger.POWERS_OF_TEN[i % Limbs.DIGITS_PER_LIMB] % 10;
+	}
+
+	public boolean hasNext() {
+		return from < to;
+	}
+
+	public int nextInt() {
+		if (from >= to) {
+			throw new NoSuchElementException();
+		}
+		return digit(limbs, mostSignificantFirst ? --to : from++);
+	}
+
+	public boolean tryAdvance(IntConsumer action) {
+		if (from >= to) {
+			return false;
+		}
+		action.accept(nextInt());
+		return true;
+	}
+
+	public void forEachRemaining(IntConsumer action) {
+		if (mostSignificantFirst) {
+			for (int i = to-1; i >= from; i--) {
+				action.accept(digit(limbs, i));
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				action.accept(digit(limbs, i));
+			}
+		}
+		from = to;
+	}
+
+	public void forEachRemaining(Consumer<? super Integer> action) {
+		if (action instanceof IntConsumer) {
+			forEachRemaining((IntConsumer) action);
+		} else {
+			forEachRemaining((IntConsumer) action::accept);
+		}
+	}
+
+	public boolean tryAdvance(Consumer<? super Integer> action) {
+		if (action instanceof IntConsumer) {
+			return tryAdvance((IntConsumer) action);
+		}
+		return tryAdvance((IntConsumer) action::accept);
+	}
+
+	public Spliterator.OfInt trySplit() {
+		int mid = (from + to) >>> 1;
+		if (mid == from) {
+			return null;
+		}
+		DigitCursor prefix;
+		if (mostSignificantFirst) {
+			prefix = new DigitCursor(limbs, mid, to, true);
+			to = mid;
+		} else {
+			prefix = new DigitCursor(limbs, from, mid, false);
+			from = mid;
+		}
+		return prefix;
+	}
+
+	public long estimateSize() {
+		return to - from;
+	}
+
+	public int characteristics() {
+		return CHARACTERISTICS;
+	}
+}
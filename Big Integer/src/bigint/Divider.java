@@ -0,0 +1,282 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * Division algorithms for base 10^9 magnitudes: Knuth's Algorithm D for small
+ * divisors, and the recursive Burnikel-Ziegler division for divisors of at
+ * least ArithmeticConfig.getBurnikelZieglerThreshold() limbs, which reduces a
+ * large division to multiplications and so inherits the fast multiply tiers.
+ *
+ * All magnitudes taken and returned here are trimmed. Results come back as a
+ * pair {quotient, remainder}.
+ */
+final class Divider {
+
+	/**
+	 * The dividend must exceed the divisor by at least this many limbs before
+	 * Burnikel-Ziegler is worth its setup cost.
+	 */
+	private static final int BURNIKEL_ZIEGLER_OFFSET = 40;
+
+	private static final int[] ONE = {1};
+
+	private Divider() {
+	}
+
+	/**
+	 * Returns {a / b, a % b}. The caller guarantees b is not zero.
+	 */
+	static int[][] divide(int[] a, int[] b) {
+		if (Limbs.compare(a, b) < 0) {
+			return new int[][] {Limbs.ZERO, a};
+		}
+		int threshold = ArithmeticConfig.getBurnikelZieglerThreshold();
+		if (b.length < threshold || a.length - b.length < BURNIKEL_ZIEGLER_OFFSET) {
+			return knuth(a, b);
+		}
+		return burnikelZiegler(a, b, threshold);
+	}
+
+	/**
+	 * Divides a by a single limb divisor, most significant limb first, leaving
+	 * the quotient in q (which has a.length limbs) and returning the remainder.
+	 */
+	static int divideSmall(int[] a, int divisor, int[] q) {
+		long rem = 0;
+		for (int i = a.length-1; i >= 0; i--) {
+			long cur = rem*Limbs.BASE + a[i];
+			q[i] = (int) (cur / divisor);
+			rem = cur - (long) q[i]*divisor;
+		}
+		return (int) rem;
+	}
+
+	/**
+	 * Knuth, TAOCP vol. 2, 4.3.1, Algorithm D. Both operands are first scaled
+	 * so the divisor's top limb is at least BASE/2, which keeps every quotient
+	 * limb estimate at most two too large.
+	 */
+	static int[][] knuth(int[] u, int[] v) {
+		if (Limbs.compare(u, v) < 0) {
+			return new int[][] {Limbs.ZERO, u};
+		}
+		if (v.length == 1) {
+			int[] q = new int[u.length];
+			int r = divideSmall(u, v[0], q);
+			return new int[][] {Limbs.trim(q), r == 0 ? Limbs.ZERO : new int[] {r}};
+		}
+		int n = v.length;
+		int m = u.length - n;
+		int d = Limbs.BASE / (v[n-1]+1);
+		int[] vn = new int[n];
+		multiplySmall(v, d, vn);
+		int[] un = new int[u.length+1];
+		multiplySmall(u, d, un);
+
+		long vTop = vn[n-1];
+		long vNext = vn[n-2];
+		int[] q = new int[m+1];
+		for (int j = m; j >= 0; j--) {
+			// estimate the quotient limb from the top two limbs of the remainder
+			long num = un[j+n]*(long) Limbs.BASE + un[j+n-1];
+			long qhat = num / vTop;
+			long rhat = num - qhat*vTop;
+			while (qhat >= Limbs.BASE || qhat*vNext > rhat*Limbs.BASE + un[j+n-2]) {
+				qhat--;
+				rhat += vTop;
+				if (rhat >= Limbs.BASE) {
+					break;
+				}
+			}
+
+			// multiply and subtract
+			long carry = 0;
+			int borrow = 0;
+			for (int i = 0; i < n; i++) {
+				long p = qhat*vn[i] + carry;
+				carry = p / Limbs.BASE;
+				int diff = un[i+j] - (int) (p - carry*Limbs.BASE) - borrow;
+				borrow = diff < 0 ? 1 : 0;
+				un[i+j] = diff + borrow*Limbs.BASE;
+			}
+			long top = un[j+n] - carry - borrow;
+
+			// the estimate was still one too large, add the divisor back
+			if (top < 0) {
+				qhat--;
+				int c = 0;
+				for (int i = 0; i < n; i++) {
+					int sum = un[i+j] + vn[i] + c;
+					c = sum >= Limbs.BASE ? 1 : 0;
+					un[i+j] = sum - c*Limbs.BASE;
+				}
+				top += c;
+			}
+			un[j+n] = (int) top;
+			q[j] = (int) qhat;
+		}
+
+		// undo the scaling on the remainder
+		int[] r = Arrays.copyOf(un, n);
+		divideSmall(r, d, r);
+		return new int[][] {Limbs.trim(q), Limbs.trim(r)};
+	}
+
+	/**
+	 * Burnikel and Ziegler, "Fast Recursive Division" (1998), Algorithm 3. The
+	 * divisor is scaled and shifted to exactly n = j * 2^k limbs with its top
+	 * limb at least BASE/2, then the dividend is consumed n limbs at a time.
+	 */
+	private static int[][] burnikelZiegler(int[] a, int[] b, int threshold) {
+		int s = b.length;
+		int m = Integer.highestOneBit(s / threshold) << 1;
+		int j = (s + m-1) / m;
+		int n = j*m;
+		int sigma = n - s;
+		int d = Limbs.BASE / (b[s-1]+1);
+
+		int[] bn = shiftLeft(multiplySmall(b, d), sigma);
+		int[] an = shiftLeft(multiplySmall(a, d), sigma);
+		// one spare block, so the top block is below BASE^n / 2 <= bn
+		int t = Math.max(2, an.length/n + 1);
+
+		int[] q = new int[(t-1)*n];
+		int[] z = block(an, t-1, n);
+		z = concat(z, block(an, t-2, n), n);
+		int[] r = Limbs.ZERO;
+		for (int i = t-2; i >= 0; i--) {
+			int[][] qr = divide2n1n(z, bn, n);
+			System.arraycopy(qr[0], 0, q, i*n, qr[0].length);
+			r = qr[1];
+			if (i > 0) {
+				z = concat(r, block(an, i-1, n), n);
+			}
+		}
+
+		// undo the scaling and shift on the remainder
+		r = shiftRight(r, sigma);
+		int[] rq = new int[r.length];
+		divideSmall(r, d, rq);
+		return new int[][] {Limbs.trim(q), Limbs.trim(rq)};
+	}
+
+	/**
+	 * Divides a 2n limb a by an n limb, normalized b, where a < b * BASE^n.
+	 */
+	private static int[][] divide2n1n(int[] a, int[] b, int n) {
+		if ((n & 1) != 0 || n < ArithmeticConfig.getBurnikelZieglerThreshold()) {
+			return knuth(a, b);
+		}
+		int half = n/2;
+		int[][] qr1 = divide3n2n(shiftRight(a, half), b, half);
+		int[][] qr2 = divide3n2n(concat(qr1[1], lower(a, half), half), b, half);
+		return new int[][] {concat(qr1[0], qr2[0], half), qr2[1]};
+	}
+
+	/**
+	 * Divides a 3h limb a by a 2h limb, normalized b, where a < b * BASE^h.
+	 */
+	private static int[][] divide3n2n(int[] a, int[] b, int half) {
+		int[] b1 = shiftRight(b, half);
+		int[] b2 = lower(b, half);
+		int[] a12 = shiftRight(a, half);
+		int[] q;
+		int[] r1;
+		if (Limbs.compare(shiftRight(a, 2*half), b1) < 0) {
+			int[][] qr = divide2n1n(a12, b1, half);
+			q = qr[0];
+			r1 = qr[1];
+		} else {
+			// q = BASE^h - 1, so r1 = a12 - q*b1 = a12 - b1*BASE^h + b1
+			q = new int[half];
+			Arrays.fill(q, Limbs.BASE-1);
+			r1 = Limbs.add(Limbs.subtract(a12, shiftLeft(b1, half)), b1);
+		}
+		int[] dd = Limbs.multiply(q, b2);
+		int[] r = concat(r1, lower(a, half), half);
+		// r may be up to two divisors short of dd
+		while (Limbs.compare(r, dd) < 0) {
+			r = Limbs.add(r, b);
+			q = Limbs.subtract(q, ONE);
+		}
+		return new int[][] {q, Limbs.subtract(r, dd)};
+	}
+
+	/**
+	 * Multiplies a by a single limb factor into res, which has room for the
+	 * carry out of the top limb if one is possible.
+	 */
+	private static void multiplySmall(int[] a, int factor, int[] res) {
+		long carry = 0;
+		for (int i = 0; i < a.length; i++) {
+			long p = (long) a[i]*factor + carry;
+			carry = p / Limbs.BASE;
+			res[i] = (int) (p - carry*Limbs.BASE);
+		}
+		if (res.length > a.length) {
+			res[a.length] = (int) carry;
+		}
+	}
+
+	private static int[] multiplySmall(int[] a, int factor) {
+		int[] res = new int[a.length+1];
+		multiplySmall(a, factor, res);
+		return Limbs.trim(res);
+	}
+
+	/**
+	 * a * BASE^k
+	 */
+	static int[] shiftLeft(int[] a, int k) {
+		if (a.length == 0 || k == 0) {
+			return a;
+		}
+		int[] res = new int[a.length+k];
+		System.arraycopy(a, 0, res, k, a.length);
+		return res;
+	}
+
+	/**
+	 * a / BASE^k
+	 */
+	static int[] shiftRight(int[] a, int k) {
+		if (k == 0) {
+			return a;
+		}
+		if (a.length <= k) {
+			return Limbs.ZERO;
+		}
+		return Arrays.copyOfRange(a, k, a.length);
+	}
+
+	/**
+	 * a % BASE^k
+	 */
+	static int[] lower(int[] a, int k) {
+		if (a.length <= k) {
+			return a;
+		}
+		return Limbs.trim(Arrays.copyOf(a, k));
+	}
+
+	/**
+	 * hi * BASE^k + lo, where lo < BASE^k
+	 */
+	private static int[] concat(int[] hi, int[] lo, int k) {
+		if (hi.length == 0) {
+			return lo;
+		}
+		int[] res = new int[hi.length+k];
+		System.arraycopy(lo, 0, res, 0, lo.length);
+		System.arraycopy(hi, 0, res, k, hi.length);
+		return res;
+	}
+
+	/**
+	 * The i-th block of n limbs of a
+	 */
+	private static int[] block(int[] a, int i, int n) {
+		return lower(shiftRight(a, i*n), n);
+	}
+}
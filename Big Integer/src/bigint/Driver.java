@@ -1,13 +1,54 @@
 package bigint;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Test driver. With no arguments it runs the small integer multiply and add
+ * tests, expressionTest and then fuzzTest; with the single argument "fuzz" it
+ * runs only fuzzTest, which is quick enough to gate a build.
+ */
 public class Driver {
 
+    /**
+     * Fuzz run shape, see fuzzTest
+     */
+    private static final int FUZZ_ITERATIONS = Integer.getInteger("bigint.fuzz.iterations", 2000);
+    private static final int FUZZ_MAX_DIGITS = Integer.getInteger("bigint.fuzz.maxDigits", 4000);
+
+    /**
+     * Operand lengths, in digits, at which the representation changes: one
+     * limb, one long, two limbs and three limbs
+     */
+    private static final int[] BOUNDARY_DIGITS = {1, 8, 9, 10, 17, 18, 19, 20, 26, 27, 28};
+
+    /**
+     * Largest lowered threshold, in limbs, that fuzzTest draws; small enough
+     * for FUZZ_MAX_DIGITS operands to reach every multiplication tier
+     */
+    private static final int FUZZ_MAX_THRESHOLD = 64;
+
     public static void main(String args[]) throws Exception {
+        if (args.length == 1 && args[0].equals("fuzz")) {
+            fuzzTest();
+            return;
+        }
 //        test();
         multTest();
         addTest();
+        expressionTest();
+        fuzzTest();
         System.out.println("::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::");
         System.out.println("::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::");
         System.out.println("\t\t\t\t\t\tALL TESTS PASSED");
@@ -55,6 +96,496 @@ public class Driver {
 
     }
 
+    /**
+     * Differential test of both integer classes against java.math.BigInteger.
+     *
+     * Each iteration draws a pair of signed operands and checks every
+     * operation on them, and the structure of every result: its digit count,
+     * its sign (zero is never negative) and, for PackedBigInteger, equality
+     * and hash code with a freshly parsed copy. The operands are skewed
+     * towards the cases an optimized path gets wrong:
+     *  - lengths around limb and long boundaries and the multiplication and
+     *    division thresholds, besides log-uniform lengths up to
+     *    -Dbigint.fuzz.maxDigits (4000 by default)
+     *  - all nines, powers of ten and sparse digits, for long carries
+     *  - equal magnitudes, magnitudes one apart and equal lengths, for
+     *    mixed-sign subtraction ties
+     *  - zero, and one operand used twice, for the squaring paths
+     *
+     * The operands stop at a few thousand digits to keep the run quick, so
+     * each iteration also draws its own configuration (see tune): every
+     * multiplication and division threshold is either left alone or lowered
+     * to at most FUZZ_MAX_THRESHOLD limbs, so Toom-Cook, the NTT and
+     * Burnikel-Ziegler are reached, and a small pool with a low parallel
+     * threshold is set half of the time. The configuration is restored at the
+     * end.
+     *
+     * The run is repeatable: the seed is printed up front and in the failure,
+     * and -Dbigint.fuzz.seed=... replays it. -Dbigint.fuzz.iterations sets the
+     * number of pairs (2000 by default).
+     */
+    private static void fuzzTest() throws Exception {
+        long seed = Long.getLong("bigint.fuzz.seed", System.nanoTime());
+        System.out.println("Fuzz test, seed " + seed);
+        Random random = new Random(seed);
+        int karatsuba = ArithmeticConfig.getKaratsubaThreshold();
+        int toomCook = ArithmeticConfig.getToomCookThreshold();
+        int ntt = ArithmeticConfig.getNttThreshold();
+        int burnikelZiegler = ArithmeticConfig.getBurnikelZieglerThreshold();
+        int parallel = ArithmeticConfig.getParallelThreshold();
+        ForkJoinPool parallelPool = ArithmeticConfig.getParallelPool();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        OperationCache cache = new OperationCache(1 << 18);
+        Path dir = Files.createTempDirectory("bigint-fuzz");
+        try {
+            for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+                ArithmeticConfig.setKaratsubaThreshold(lower(random, karatsuba));
+                ArithmeticConfig.setToomCookThreshold(lower(random, toomCook));
+                ArithmeticConfig.setNttThreshold(lower(random, ntt));
+                ArithmeticConfig.setBurnikelZieglerThreshold(lower(random, burnikelZiegler));
+                ArithmeticConfig.setParallelThreshold(lower(random, parallel));
+                ArithmeticConfig.setParallelPool(random.nextBoolean() ? pool : null);
+                String t1 = operand(random);
+                String t2 = related(random, t1);
+                try {
+                    fuzzPair(random, t1, t2, pool, cache, dir);
+                } catch (Exception | AssertionError e) {
+                    System.out.println(t1);
+                    System.out.println(t2);
+                    throw new Exception("Fuzz test failed at iteration " + i + " with thresholds "
+                            + ArithmeticConfig.getKaratsubaThreshold() + "/" + ArithmeticConfig.getToomCookThreshold()
+                            + "/" + ArithmeticConfig.getNttThreshold()
+                            + "/" + ArithmeticConfig.getBurnikelZieglerThreshold()
+                            + ", parallel " + ArithmeticConfig.getParallelThreshold()
+                            + (ArithmeticConfig.getParallelPool() == null ? " (no pool)" : "")
+                            + ", replay with -Dbigint.fuzz.seed=" + seed, e);
+                }
+            }
+        } finally {
+            ArithmeticConfig.setKaratsubaThreshold(karatsuba);
+            ArithmeticConfig.setToomCookThreshold(toomCook);
+            ArithmeticConfig.setNttThreshold(ntt);
+            ArithmeticConfig.setBurnikelZieglerThreshold(burnikelZiegler);
+            ArithmeticConfig.setParallelThreshold(parallel);
+            ArithmeticConfig.setParallelPool(parallelPool);
+            pool.shutdown();
+            Files.deleteIfExists(dir);
+        }
+        System.out.println("::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::");
+        System.out.println("Fuzz Test Successful! (" + FUZZ_ITERATIONS + " pairs)");
+        System.out.println("::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::");
+    }
+
+    /**
+     * Returns threshold half of the time, and otherwise a random threshold of
+     * at most FUZZ_MAX_THRESHOLD limbs below it
+     */
+    private static int lower(Random random, int threshold) {
+        if (threshold <= 4 || random.nextBoolean()) {
+            return threshold;
+        }
+        return 4 + random.nextInt(Math.min(threshold, FUZZ_MAX_THRESHOLD) - 3);
+    }
+
+    /**
+     * Checks every operation on one pair of operands
+     */
+    private static void fuzzPair(Random random, String t1, String t2, ForkJoinPool pool, OperationCache cache,
+            Path dir) throws Exception {
+        java.math.BigInteger x = new java.math.BigInteger(t1);
+        java.math.BigInteger y = new java.math.BigInteger(t2);
+
+        BigInteger one = BigInteger.parse(t1);
+        BigInteger two = BigInteger.parse(t2);
+        BigInteger twoNeg = BigInteger.parse(y.negate().toString());
+        PackedBigInteger p1 = PackedBigInteger.parse(t1);
+        PackedBigInteger p2 = PackedBigInteger.parse(t2);
+
+        check("list.parse", x, one);
+        check("packed.parse", x, p1);
+        check("packed.from", x, PackedBigInteger.from(one));
+        check("packed.toBigInteger", y, p2.toBigInteger());
+
+        check("list.add", x.add(y), BigInteger.add(one, two));
+        check("list.subtract", x.subtract(y), BigInteger.add(one, twoNeg));
+        // the accumulator itself holds the sum, whatever its size
+        BigInteger acc = BigInteger.parse(t1);
+        BigInteger.addInPlace(acc, two);
+        check("list.addInPlace", x.add(y), acc);
+        check("list.multiply", x.multiply(y), BigInteger.multiply(one, two));
+        check("list.multiplySelf", x.multiply(x), BigInteger.multiply(one, one));
+        check("list.square", y.multiply(y), BigInteger.square(two));
+        check("packed.add", x.add(y), PackedBigInteger.add(p1, p2));
+        check("packed.subtract", x.subtract(y), PackedBigInteger.add(p1, PackedBigInteger.negate(p2)));
+        check("packed.multiply", x.multiply(y), PackedBigInteger.multiply(p1, p2));
+        check("packed.multiplyNegated", x.multiply(x).negate(),
+                PackedBigInteger.multiply(p1, PackedBigInteger.negate(p1)));
+        check("packed.square", y.multiply(y), PackedBigInteger.square(p2));
+
+        if (y.signum() != 0) {
+            java.math.BigInteger[] qr = x.divideAndRemainder(y);
+            BigInteger[] lqr = BigInteger.divMod(one, two);
+            PackedBigInteger[] pqr = PackedBigInteger.divMod(p1, p2);
+            check("list.divide", qr[0], lqr[0]);
+            check("list.remainder", qr[1], lqr[1]);
+            check("packed.divide", qr[0], pqr[0]);
+            check("packed.remainder", qr[1], pqr[1]);
+            if (y.signum() > 0) {
+                check("list.mod", x.mod(y), BigInteger.mod(one, two));
+                check("packed.mod", x.mod(y), PackedBigInteger.mod(p1, p2));
+                // up to 1024 bits, fewer for long moduli, so that every
+                // window size of the sliding window is used
+                int maxBits = Math.max(64, Math.min(1024, 400000 / t2.length()));
+                java.math.BigInteger e = new java.math.BigInteger(random.nextInt(maxBits + 1), random);
+                java.math.BigInteger power = x.modPow(e, y);
+                check("packed.modPow", power, PackedBigInteger.modPow(p1, PackedBigInteger.parse(e.toString()), p2));
+                check("list.modPow", power, BigInteger.modPow(one, BigInteger.parse(e.toString()), two));
+            }
+        }
+        int exponent = random.nextInt(Math.max(2, 8000 / Math.max(1, t1.length())));
+        check("packed.pow", x.pow(exponent), PackedBigInteger.pow(p1, exponent));
+
+        long word = word(random);
+        check("list.multiplyWord", x.multiply(java.math.BigInteger.valueOf(word)), BigInteger.multiply(one, word));
+        check("packed.multiplyWord", x.multiply(java.math.BigInteger.valueOf(word)), PackedBigInteger.multiply(p1, word));
+        int divisor = (int) word;
+        if (divisor != 0) {
+            java.math.BigInteger d = java.math.BigInteger.valueOf(divisor);
+            check("list.divideWord", x.divide(d), BigInteger.divide(one, divisor));
+            check("packed.divideWord", x.divide(d), PackedBigInteger.divide(p1, divisor));
+            expect("list.remainderWord", x.remainder(d).intValue(), BigInteger.remainder(one, divisor));
+            expect("packed.remainderWord", x.remainder(d).intValue(), PackedBigInteger.remainder(p1, divisor));
+        }
+
+        int places = random.nextInt(t1.length() + 40) - t1.length() - 2;
+        java.math.BigInteger shifted = places >= 0 ? x.multiply(java.math.BigInteger.TEN.pow(places))
+                : x.divide(java.math.BigInteger.TEN.pow(-places));
+        BigInteger listShifted = BigInteger.shiftDecimal(one, places);
+        check("list.shiftDecimal", shifted, listShifted);
+        // the result shares no nodes with the operand
+        BigInteger.addInPlace(listShifted, one);
+        check("list.shiftDecimal operand", x, one);
+        check("packed.shiftDecimal", shifted, PackedBigInteger.shiftDecimal(p1, places));
+
+        java.math.BigInteger sum = x.add(y).add(x);
+        java.math.BigInteger product = x.multiply(y).multiply(x);
+        check("list.sum", sum, BigInteger.sum(List.of(one, two, one)));
+        check("list.product", product, BigInteger.product(List.of(one, two, one)));
+        check("packed.sum", sum, PackedBigInteger.sum(List.of(p1, p2, p1)));
+        check("packed.product", product, PackedBigInteger.product(List.of(p1, p2, p1)));
+        check("batch.add", x.add(y), BatchArithmetic.add(new PackedBigInteger[] {p1}, new PackedBigInteger[] {p2})[0]);
+        check("batch.multiply", x.multiply(y),
+                BatchArithmetic.multiply(new PackedBigInteger[] {p1}, new PackedBigInteger[] {p2})[0]);
+        check("expression", x.multiply(y).add(x).subtract(y).negate(), Expression.negate(Expression.subtract(
+                Expression.add(Expression.multiply(Expression.of(p1), Expression.of(p2)), Expression.of(p1)),
+                Expression.of(p2))).evaluate());
+        check("mutable.multiplyAdd", x.add(x.multiply(y)),
+                new MutableBigInteger(p1).multiplyAdd(p1, p2).toPackedBigInteger());
+        check("mutable.add", x.add(y).add(y), new MutableBigInteger(p1).add(p2).add(p2).toPackedBigInteger());
+
+        int radix = Character.MIN_RADIX + random.nextInt(Character.MAX_RADIX - Character.MIN_RADIX + 1);
+        String inRadix = x.toString(radix);
+        expect("packed.toStringRadix", inRadix, p1.toString(radix));
+        expect("list.toStringRadix", inRadix, one.toString(radix));
+        check("packed.parseRadix", x, PackedBigInteger.parse(random.nextBoolean() ? inRadix : inRadix.toUpperCase(), radix));
+        check("list.parseRadix", x, BigInteger.parse(inRadix, radix));
+        byte[] bytes = x.toByteArray();
+        expect("packed.toByteArray", true, Arrays.equals(bytes, p1.toByteArray()));
+        expect("list.toByteArray", true, Arrays.equals(bytes, one.toByteArray()));
+        check("packed.fromByteArray", x, PackedBigInteger.fromByteArray(bytes));
+        check("list.fromByteArray", x, BigInteger.fromByteArray(bytes));
+
+        ByteBuffer buf = ByteBuffer.allocate((int) p1.binarySize());
+        p1.writeBinary(buf);
+        buf.flip();
+        check("packed.readBinary", x, PackedBigInteger.readBinary(buf));
+        check("list.readBinary", x, BigInteger.readBinary(roundTrip(one)));
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        p2.writeBinary(Channels.newChannel(binary));
+        check("packed.readBinaryChannel", y,
+                PackedBigInteger.readBinary(Channels.newChannel(new ByteArrayInputStream(binary.toByteArray()))));
+        ByteBuffer listBuf = ByteBuffer.allocate((int) p2.binarySize());
+        two.writeBinary(listBuf);
+        listBuf.flip();
+        check("list.readBinaryBuffer", y, BigInteger.readBinary(listBuf));
+
+        // ASCII bytes, read in place between the buffer's position and limit
+        byte[] ascii = (" " + t1 + " ").getBytes(StandardCharsets.US_ASCII);
+        check("packed.parseBytes", x, PackedBigInteger.parse(ascii));
+        ByteBuffer direct = ByteBuffer.allocateDirect(ascii.length + 2);
+        direct.put((byte) 'x').put(ascii).put((byte) 'x').flip();
+        direct.position(1).limit(ascii.length + 1);
+        check("packed.parseBuffer", x, PackedBigInteger.parse(direct));
+        expect("packed.parseBuffer position", 1, direct.position());
+        StringBuilder written = new StringBuilder();
+        p1.writeTo(written);
+        expect("packed.writeToAppendable", x.toString(), written.toString());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        p2.writeTo(stream);
+        expect("packed.writeToStream", y.toString(), stream.toString(StandardCharsets.US_ASCII));
+
+        // a product computed, then found in the cache under either operand order
+        check("cache.multiply", x.multiply(y), cache.multiply(p1, p2));
+        check("cache.multiplyHit", x.multiply(y), cache.multiply(PackedBigInteger.parse(t2), p1));
+        int cached = random.nextInt(8);
+        check("cache.pow", x.pow(cached), cache.pow(p1, cached));
+        check("cache.listMultiply", x.multiply(y), cache.multiply(one, two));
+        check("cache.listPow", x.pow(cached), cache.pow(one, cached));
+
+        // a sum shared by a square, a product and an outer sum
+        Expression s = Expression.add(Expression.of(p1), Expression.of(p2));
+        Expression shared = Expression.subtract(Expression.add(Expression.multiply(s, s), s),
+                Expression.multiply(s, Expression.of(one)));
+        java.math.BigInteger xy = x.add(y);
+        java.math.BigInteger sharedValue = xy.multiply(xy).add(xy).subtract(xy.multiply(x));
+        check("expression.shared", sharedValue, shared.evaluate());
+        check("expression.sharedParallel", sharedValue, shared.evaluate(pool));
+
+        if (random.nextInt(4) == 0) {
+            fuzzMapped(random, x, y, p1, p2, dir);
+        }
+        expect("packed.digits", x.abs().toString(), digitString(p1.digits().toArray()));
+        expect("list.digits", y.abs().toString(), digitString(two.digits().toArray()));
+    }
+
+    /**
+     * Checks MappedBigInteger add and multiply, with blocks of a few limbs so
+     * that carries and block products cross block boundaries, and that an
+     * operand's file is refused as the output
+     */
+    private static void fuzzMapped(Random random, java.math.BigInteger x, java.math.BigInteger y,
+            PackedBigInteger p1, PackedBigInteger p2, Path dir) throws Exception {
+        Path f1 = dir.resolve("first");
+        Path f2 = dir.resolve("second");
+        Path sum = dir.resolve("sum");
+        Path product = dir.resolve("product");
+        int block = 1 + random.nextInt(8);
+        try (MappedBigInteger m1 = MappedBigInteger.create(f1, p1);
+                MappedBigInteger m2 = MappedBigInteger.create(f2, p2);
+                MappedBigInteger ms = MappedBigInteger.add(m1, m2, sum, block);
+                MappedBigInteger mp = MappedBigInteger.multiply(m1, m2, product, block)) {
+            check("mapped.create", x, m1.toPackedBigInteger());
+            expect("mapped.numDigits", (long) (y.signum() == 0 ? 0 : y.abs().toString().length()), m2.numDigits());
+            check("mapped.add", x.add(y), ms.toPackedBigInteger());
+            check("mapped.multiply", x.multiply(y), mp.toPackedBigInteger());
+            try {
+                MappedBigInteger.multiply(m1, m2, f2, block);
+                throw new Exception("mapped.multiply: accepted an operand's file as the output");
+            } catch (IllegalArgumentException e) {
+                // refused before the file is touched
+            }
+            check("mapped.operand", y, m2.toPackedBigInteger());
+        } finally {
+            // deleted rather than overwritten, as the old mappings live on until collected
+            for (Path f : new Path[] {f1, f2, sum, product}) {
+                Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    private static ByteBuffer roundTrip(BigInteger integer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        integer.writeBinary(Channels.newChannel(bytes));
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static String digitString(int[] digits) {
+        if (digits.length == 0) {
+            return "0";
+        }
+        StringBuilder sb = new StringBuilder(digits.length);
+        for (int d : digits) {
+            sb.append((char) ('0' + d));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks the value and the structure of a linked list result
+     */
+    private static void check(String op, java.math.BigInteger expected, BigInteger actual) throws Exception {
+        String digits = expected.abs().toString();
+        expect(op, expected.toString(), actual.toString());
+        expect(op + " digits", expected.signum() == 0 ? 0 : digits.length(), actual.numDigits);
+        expect(op + " sign", expected.signum() < 0, actual.negative);
+    }
+
+    /**
+     * Checks the value and the structure of a packed result
+     */
+    private static void check(String op, java.math.BigInteger expected, PackedBigInteger actual) throws Exception {
+        String digits = expected.abs().toString();
+        expect(op, expected.toString(), actual.toString());
+        expect(op + " digits", expected.signum() == 0 ? 0 : digits.length(), actual.numDigits);
+        expect(op + " sign", expected.signum() < 0, actual.negative);
+        PackedBigInteger parsed = PackedBigInteger.parse(expected.toString());
+        expect(op + " equals", true, parsed.equals(actual) && actual.equals(parsed));
+        expect(op + " hashCode", parsed.hashCode(), actual.hashCode());
+    }
+
+    private static void expect(String op, Object expected, Object actual) throws Exception {
+        if (!expected.equals(actual)) {
+            throw new Exception(op + ": expected " + abbreviate(expected) + " but got " + abbreviate(actual));
+        }
+    }
+
+    private static String abbreviate(Object value) {
+        String s = String.valueOf(value);
+        return s.length() <= 80 ? s : s.substring(0, 40) + "..." + s.substring(s.length()-40)
+                + " (" + s.length() + " chars)";
+    }
+
+    /**
+     * Returns a random signed operand, skewed as described in fuzzTest
+     */
+    private static String operand(Random random) {
+        int length;
+        switch (random.nextInt(8)) {
+        case 0:
+            length = random.nextInt(3);
+            break;
+        case 1:
+            length = BOUNDARY_DIGITS[random.nextInt(BOUNDARY_DIGITS.length)];
+            break;
+        case 2:
+            // around a multiplication or division threshold, in digits
+            int[] thresholds = {ArithmeticConfig.getKaratsubaThreshold(), ArithmeticConfig.getToomCookThreshold(),
+                    ArithmeticConfig.getBurnikelZieglerThreshold()};
+            length = thresholds[random.nextInt(thresholds.length)]*Limbs.DIGITS_PER_LIMB + random.nextInt(19) - 9;
+            break;
+        default:
+            length = (int) Math.pow(FUZZ_MAX_DIGITS, random.nextDouble());
+        }
+        length = Math.min(length, FUZZ_MAX_DIGITS);
+        if (length <= 0) {
+            return "0";
+        }
+        char[] digits = new char[length];
+        switch (random.nextInt(6)) {
+        case 0:
+            Arrays.fill(digits, '9');
+            break;
+        case 1:
+            // a power of ten
+            Arrays.fill(digits, '0');
+            break;
+        case 2:
+            Arrays.fill(digits, '0');
+            for (int k = random.nextInt(4); k >= 0; k--) {
+                digits[random.nextInt(length)] = (char) ('0' + random.nextInt(10));
+            }
+            break;
+        default:
+            for (int k = 0; k < length; k++) {
+                digits[k] = (char) ('0' + random.nextInt(10));
+            }
+        }
+        if (digits[0] == '0') {
+            digits[0] = (char) ('1' + random.nextInt(9));
+        }
+        return (random.nextBoolean() ? "-" : "") + new String(digits);
+    }
+
+    /**
+     * Returns a second operand for first: independent, or a tie, near tie or
+     * same length variant of it
+     */
+    private static String related(Random random, String first) {
+        java.math.BigInteger x = new java.math.BigInteger(first);
+        String sign = random.nextBoolean() ? "-" : "";
+        switch (random.nextInt(8)) {
+        case 0:
+            // the same magnitude, with either sign
+            return new java.math.BigInteger(sign + x.abs()).toString();
+        case 1:
+            // a magnitude one apart
+            return new java.math.BigInteger(sign + x.abs().add(java.math.BigInteger.valueOf(
+                    random.nextBoolean() || x.signum() == 0 ? 1 : -1))).toString();
+        case 2:
+            // the same number of digits, with a different top digit
+            String digits = x.abs().toString();
+            char top = (char) ('1' + random.nextInt(9));
+            return new java.math.BigInteger(sign + top + digits.substring(1)).toString();
+        default:
+            return operand(random);
+        }
+    }
+
+    /**
+     * Returns a machine word factor or divisor: small, near a limb, or any long
+     */
+    private static long word(Random random) {
+        switch (random.nextInt(4)) {
+        case 0:
+            return random.nextInt(21) - 10;
+        case 1:
+            return (random.nextBoolean() ? 1 : -1) * (1_000_000_000L + random.nextInt(3) - 1);
+        case 2:
+            return random.nextInt();
+        default:
+            return random.nextLong();
+        }
+    }
+
+    /**
+     * Checks Expression on shapes that defeat a recursive or tree-shaped
+     * evaluator, sequentially and in a pool with a low parallel threshold:
+     *  - a node added to itself over and over, whose tree has 2^n leaves
+     *  - a Fibonacci DAG, where every node is shared by the next two
+     *  - product chains, and sums of products, thousands of levels deep
+     */
+    private static void expressionTest() throws Exception {
+        int threshold = ArithmeticConfig.getParallelThreshold();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ArithmeticConfig.setParallelThreshold(4);
+            java.math.BigInteger x = new java.math.BigInteger("-123456789012345678901234567890");
+            Expression doubled = Expression.of(PackedBigInteger.parse(x.toString()));
+            for (int i = 0; i < 200; i++) {
+                doubled = Expression.add(doubled, doubled);
+            }
+            checkExpression("expression.doubled", x.shiftLeft(200), doubled, pool);
+
+            java.math.BigInteger a = java.math.BigInteger.ZERO;
+            java.math.BigInteger b = java.math.BigInteger.ONE;
+            Expression f0 = Expression.of(0);
+            Expression f1 = Expression.of(1);
+            for (int i = 0; i < 2000; i++) {
+                Expression f2 = Expression.add(f1, f0);
+                f0 = f1;
+                f1 = f2;
+                java.math.BigInteger c = a.add(b);
+                a = b;
+                b = c;
+            }
+            checkExpression("expression.fibonacci", b, f1, pool);
+            // a shared sum under products and a subtraction
+            checkExpression("expression.sharedSum", b.multiply(b).subtract(b.negate()),
+                    Expression.subtract(Expression.multiply(f1, f1), Expression.negate(f1)), pool);
+
+            Expression chain = Expression.of(1);
+            Expression alternating = Expression.of(PackedBigInteger.parse(x.toString()));
+            for (int i = 0; i < 20000; i++) {
+                chain = Expression.multiply(chain, Expression.of(3));
+                alternating = Expression.add(Expression.multiply(alternating, Expression.of(1)), Expression.of(1));
+            }
+            checkExpression("expression.productChain", java.math.BigInteger.valueOf(3).pow(20000), chain, pool);
+            checkExpression("expression.alternating", x.add(java.math.BigInteger.valueOf(20000)), alternating, pool);
+        } finally {
+            ArithmeticConfig.setParallelThreshold(threshold);
+            pool.shutdown();
+        }
+        System.out.println("::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::");
+        System.out.println("Expression Test Successful!");
+        System.out.println("::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::");
+    }
+
+    private static void checkExpression(String op, java.math.BigInteger expected, Expression e, ForkJoinPool pool)
+            throws Exception {
+        check(op, expected, e.evaluate());
+        check(op + " parallel", expected, e.evaluate(pool));
+    }
+
     private static void multTest() throws Exception{
         int i = 0;
         while (i < 100000) {
@@ -74,7 +605,8 @@ public class Driver {
                 int actual = Integer.parseInt(t1) * Integer.parseInt(t2);
 
                 int len1 = ans.numDigits;
-                int len2 = String.valueOf(actual).length();
+                // zero is the empty list, with no digits
+                int len2 = actual == 0 ? 0 : String.valueOf(actual).length();
 
                 if (test != actual) {
                     System.out.println("Test: " + test + " :::: " + "Actual: " + actual);
@@ -120,7 +652,8 @@ public class Driver {
                 int actual = Integer.parseInt(t1) + Integer.parseInt(t2);
 
                 int len1 = ans.numDigits;
-                int len2 = String.valueOf(actual).length();
+                // zero is the empty list, with no digits
+                int len2 = actual == 0 ? 0 : String.valueOf(actual).length();
 
                 if (test != actual) {
                     System.out.println("Test: " + test + " :::: " + "Actual: " + actual);
@@ -0,0 +1,195 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * Powers of base 10^9 magnitudes.
+ *
+ * modPow works with Barrett reduction, which needs no condition on the modulus
+ * (Montgomery reduction would need one coprime to the limb radix 10^9, i.e. not
+ * divisible by 2 or 5). It scans the exponent with a sliding window over its
+ * binary digits, so only odd powers of the base up to 2^k-1 are precomputed.
+ *
+ * All magnitudes taken and returned here are trimmed.
+ */
+final class Exponentiation {
+
+	/**
+	 * Largest exponent bit length served by each window size, as in
+	 * java.math.BigInteger
+	 */
+	private static final int[] WINDOW_BITS = {7, 25, 81, 241, 673, 1793, Integer.MAX_VALUE};
+
+	private static final int[] ONE = {1};
+
+	private Exponentiation() {
+	}
+
+	/**
+	 * Returns base^exponent, by binary square-and-multiply.
+	 */
+	static int[] pow(int[] base, int exponent) {
+		int[] res = ONE;
+		int[] square = base;
+		while (exponent != 0) {
+			if ((exponent & 1) != 0) {
+				res = Limbs.multiply(res, square);
+			}
+			exponent >>>= 1;
+			if (exponent != 0) {
+				square = Limbs.square(square);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns base^exponent mod modulus. The caller guarantees base < modulus
+	 * and modulus > 1.
+	 */
+	static int[] modPow(int[] base, int[] exponent, int[] modulus) {
+		Barrett barrett = new Barrett(modulus);
+		int[] bits = toBinary(exponent);
+		int bitLength = bitLength(bits);
+		if (bitLength == 0) {
+			return ONE;
+		}
+
+		int k = 1;
+		while (bitLength > WINDOW_BITS[k-1]) {
+			k++;
+		}
+		// odd powers base^1, base^3, ..., base^(2^k - 1)
+		int[][] table = new int[1 << (k-1)][];
+		table[0] = base;
+		if (k > 1) {
+			int[] square = barrett.reduce(Limbs.square(base));
+			for (int i = 1; i < table.length; i++) {
+				table[i] = barrett.reduce(Limbs.multiply(table[i-1], square));
+			}
+		}
+
+		// the first window starts at the top bit, so res is set before any squaring
+		int[] res = null;
+		int i = bitLength-1;
+		while (i >= 0) {
+			if (!testBit(bits, i)) {
+				res = barrett.reduce(Limbs.square(res));
+				i--;
+				continue;
+			}
+			// longest window of at most k bits that starts at bit i and ends on a 1
+			int low = Math.max(0, i-k+1);
+			while (!testBit(bits, low)) {
+				low++;
+			}
+			int window = 0;
+			for (int b = i; b >= low; b--) {
+				window = (window << 1) | (testBit(bits, b) ? 1 : 0);
+				if (res != null) {
+					res = barrett.reduce(Limbs.square(res));
+				}
+			}
+			int[] power = table[window >>> 1];
+			res = res == null ? power : barrett.reduce(Limbs.multiply(res, power));
+			i = low-1;
+		}
+		return res;
+	}
+
+	/**
+	 * Converts a magnitude to base 2^30 words, least significant word first.
+	 */
+	private static int[] toBinary(int[] a) {
+		// a limb holds less than 30 bits, so there are at most a.length words
+		int[] words = new int[a.length];
+		int[] cur = a;
+		int count = 0;
+		int[] q = new int[a.length];
+		while (cur.length != 0) {
+			// divide by 2^30 in one pass, most significant limb first
+			long rem = 0;
+			for (int i = cur.length-1; i >= 0; i--) {
+				long v = rem*Limbs.BASE + cur[i];
+				q[i] = (int) (v >>> 30);
+				rem = v & ((1 << 30) - 1);
+			}
+			words[count++] = (int) rem;
+			int len = cur.length;
+			while (len > 0 && q[len-1] == 0) {
+				len--;
+			}
+			cur = Arrays.copyOf(q, len);
+		}
+		return Arrays.copyOf(words, count);
+	}
+
+	private static int bitLength(int[] words) {
+		if (words.length == 0) {
+			return 0;
+		}
+		return (words.length-1)*30 + 32 - Integer.numberOfLeadingZeros(words[words.length-1]);
+	}
+
+	private static boolean testBit(int[] words, int bit) {
+		return (words[bit/30] >>> (bit%30) & 1) != 0;
+	}
+
+	/**
+	 * Barrett reduction modulo a fixed m of k limbs, with mu = BASE^2k / m
+	 * computed once. Reduces any x < BASE^2k, in particular any product of two
+	 * residues, with two multiplications and at most a few subtractions.
+	 *
+	 * For moduli below the Toom-Cook threshold both multiplications are
+	 * truncated: the quotient estimate only needs the columns of x/BASE^(k-1) * mu
+	 * from k-1 up, and the remainder only the low k+1 columns of q * m. The
+	 * dropped low columns make the quotient at most one short, which the final
+	 * subtraction loop absorbs.
+	 */
+	static final class Barrett {
+		private final int[] m;
+		private final int[] mu;
+		private final int k;
+		private final boolean truncate;
+
+		Barrett(int[] m) {
+			this.m = m;
+			this.k = m.length;
+			int[] b2k = new int[2*k+1];
+			b2k[2*k] = 1;
+			this.mu = Divider.divide(b2k, m)[0];
+			this.truncate = k < ArithmeticConfig.getToomCookThreshold();
+		}
+
+		int[] reduce(int[] x) {
+			if (Limbs.compare(x, m) < 0) {
+				return x;
+			}
+			int[] q1 = Divider.shiftRight(x, k-1);
+			int[] q;
+			int[] r2;
+			if (truncate) {
+				int from = Math.max(0, k-1);
+				q = Limbs.trim(Divider.shiftRight(
+						Limbs.schoolbookColumns(q1, mu, from, q1.length+mu.length), k+1-from));
+				r2 = Limbs.trim(Limbs.schoolbookColumns(q, m, 0, k+1));
+			} else {
+				q = Divider.shiftRight(Limbs.multiply(q1, mu), k+1);
+				r2 = Divider.lower(Limbs.multiply(q, m), k+1);
+			}
+			int[] r1 = Divider.lower(x, k+1);
+			int[] r;
+			if (Limbs.compare(r1, r2) >= 0) {
+				r = Limbs.subtract(r1, r2);
+			} else {
+				int[] bk1 = new int[k+2];
+				bk1[k+1] = 1;
+				r = Limbs.subtract(Limbs.add(r1, bk1), r2);
+			}
+			while (Limbs.compare(r, m) >= 0) {
+				r = Limbs.subtract(r, m);
+			}
+			return r;
+		}
+	}
+}
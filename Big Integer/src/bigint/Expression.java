@@ -0,0 +1,403 @@
+package bigint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A lazily evaluated arithmetic expression over big integers, such as
+ * a*b + c*d - e. Building an expression only records the operations; nothing
+ * is computed until evaluate is called.
+ *
+ * Evaluating the whole expression at once avoids most intermediate values:
+ *  - Every chain of adds, subtracts and negations is flattened into one signed
+ *    sum of its terms, which is added column by column into a long
+ *    accumulator and normalized in a single carry pass. A sum of k terms thus
+ *    allocates one result instead of k-1.
+ *  - The accumulator and the carry buffer are scratch buffers reused by every
+ *    sum of the evaluation.
+ *  - An expression may be a DAG: a node used in several places is evaluated
+ *    only once, and is a single term of every sum that uses it rather than
+ *    being flattened into each of them. A product of a node with itself is
+ *    a square.
+ *  - Evaluation runs on an explicit stack, so chains of any depth, such as
+ *    one product or sum built per loop iteration, cannot overflow the Java
+ *    stack.
+ *
+ * Given a pool, the operands of a product and the terms of a sum are
+ * evaluated as parallel tasks once their estimated size reaches
+ * ArithmeticConfig.getParallelThreshold() limbs. The result does not depend
+ * on the pool. (A node shared between parallel branches may then be evaluated
+ * by both.)
+ *
+ * Expressions are immutable and may be shared between threads and reused.
+ */
+public final class Expression {
+
+	/**
+	 * Node kinds
+	 */
+	private static final int VALUE = 0;
+	private static final int ADD = 1;
+	private static final int SUBTRACT = 2;
+	private static final int NEGATE = 3;
+	private static final int MULTIPLY = 4;
+
+	/**
+	 * Most levels of parallel tasks nested in one another. Operands below that
+	 * are evaluated on the stack of the task that reaches them, so the Java
+	 * stack stays bounded whatever the shape of the expression.
+	 */
+	private static final int MAX_TASK_DEPTH = 16;
+
+	private final int op;
+	private final Expression left;
+	private final Expression right;
+	private final PackedBigInteger value;
+
+	/**
+	 * Upper bound on the limbs of the result, used to decide what is worth
+	 * a parallel task
+	 */
+	private final long size;
+
+	private Expression(int op, Expression left, Expression right, PackedBigInteger value, long size) {
+		this.op = op;
+		this.left = left;
+		this.right = right;
+		this.value = value;
+		this.size = size;
+	}
+
+	/**
+	 * @param value Value of the leaf
+	 * @return Expression that evaluates to value
+	 */
+	public static Expression of(PackedBigInteger value) {
+		return new Expression(VALUE, null, null, value, value.limbs.length);
+	}
+
+	/**
+	 * Returns a leaf holding a packed copy of value, so later changes to it
+	 * (through addInPlace) do not change the expression.
+	 *
+	 * @param value Value of the leaf
+	 * @return Expression that evaluates to value
+	 */
+	public static Expression of(BigInteger value) {
+		return of(PackedBigInteger.from(value));
+	}
+
+	/**
+	 * @param value Value of the leaf
+	 * @return Expression that evaluates to value
+	 */
+	public static Expression of(long value) {
+		return of(PackedBigInteger.valueOf(value));
+	}
+
+	/**
+	 * @return Expression for first + second
+	 */
+	public static Expression add(Expression first, Expression second) {
+		return new Expression(ADD, first, second, null, Math.max(first.size, second.size) + 1);
+	}
+
+	/**
+	 * @return Expression for first - second
+	 */
+	public static Expression subtract(Expression first, Expression second) {
+		return new Expression(SUBTRACT, first, second, null, Math.max(first.size, second.size) + 1);
+	}
+
+	/**
+	 * @return Expression for -operand
+	 */
+	public static Expression negate(Expression operand) {
+		return new Expression(NEGATE, operand, null, null, operand.size);
+	}
+
+	/**
+	 * @return Expression for first * second
+	 */
+	public static Expression multiply(Expression first, Expression second) {
+		return new Expression(MULTIPLY, first, second, null, first.size + second.size);
+	}
+
+	/**
+	 * Evaluates the expression on the calling thread.
+	 *
+	 * @return Value of the expression
+	 */
+	public PackedBigInteger evaluate() {
+		return new Evaluator(null, 0, new IdentityHashMap<>(), uses(this)).evaluate(this);
+	}
+
+	/**
+	 * Evaluates the expression, running large independent subexpressions as
+	 * tasks in the pool.
+	 *
+	 * @param pool Pool to run subexpressions in, or null for evaluate()
+	 * @return Value of the expression
+	 */
+	public PackedBigInteger evaluate(ForkJoinPool pool) {
+		if (pool == null) {
+			return evaluate();
+		}
+		return new Evaluator(pool, 0, new ConcurrentHashMap<>(), uses(this)).evaluate(this);
+	}
+
+	/**
+	 * Counts the references to every operation node under root, root itself
+	 * counting as one. Runs on an explicit stack, visiting each node once.
+	 */
+	private static Map<Expression, Integer> uses(Expression root) {
+		Map<Expression, Integer> uses = new IdentityHashMap<>();
+		ArrayDeque<Expression> nodes = new ArrayDeque<>();
+		if (root.op != VALUE) {
+			uses.put(root, 1);
+			nodes.push(root);
+		}
+		while (!nodes.isEmpty()) {
+			Expression node = nodes.pop();
+			for (Expression child : new Expression[] {node.left, node.right}) {
+				if (child != null && child.op != VALUE && uses.merge(child, 1, Integer::sum) == 1) {
+					nodes.push(child);
+				}
+			}
+		}
+		return uses;
+	}
+
+	/**
+	 * A node being evaluated, with the operands it needs first: the factors of
+	 * a product, or the terms of a sum with a flag for each subtracted one
+	 */
+	private static final class Step {
+		final Expression node;
+		Expression[] operands;
+		boolean[] minus;
+
+		Step(Expression node) {
+			this.node = node;
+		}
+	}
+
+	/**
+	 * Evaluation state: the pool, the values of the nodes evaluated so far,
+	 * the reference counts and the scratch buffers of the sums. An evaluator
+	 * runs on one thread; each parallel task gets its own, sharing the pool,
+	 * the values and the counts.
+	 *
+	 * Nodes are evaluated in post-order on an explicit stack, so no chain of
+	 * products or sums, however deep, can overflow the Java stack. A node
+	 * referenced more than once is never flattened into a sum: it is evaluated
+	 * on its own, once, and is a term of every sum that uses it.
+	 */
+	private static final class Evaluator {
+		private final ForkJoinPool pool;
+		private final int depth;
+		private final Map<Expression, PackedBigInteger> done;
+		private final Map<Expression, Integer> uses;
+		private long[] acc = new long[0];
+		private int[] res = Limbs.ZERO;
+
+		Evaluator(ForkJoinPool pool, int depth, Map<Expression, PackedBigInteger> done,
+				Map<Expression, Integer> uses) {
+			this.pool = pool;
+			this.depth = depth;
+			this.done = done;
+			this.uses = uses;
+		}
+
+		PackedBigInteger evaluate(Expression root) {
+			if (root.op == VALUE) {
+				return root.value;
+			}
+			ArrayDeque<Step> stack = new ArrayDeque<>();
+			stack.push(new Step(root));
+			while (!stack.isEmpty()) {
+				Step step = stack.peek();
+				if (step.operands == null) {
+					if (done.containsKey(step.node)) {
+						// shared, and finished since it was pushed
+						stack.pop();
+						continue;
+					}
+					expand(step);
+					schedule(step.operands, stack);
+					continue;
+				}
+				stack.pop();
+				PackedBigInteger[] values = new PackedBigInteger[step.operands.length];
+				for (int i = 0; i < values.length; i++) {
+					Expression operand = step.operands[i];
+					// without a pool, a value needed only here is dropped once read
+					// (with one, a shared node above it may be evaluated twice)
+					values[i] = operand.op == VALUE ? operand.value
+							: pool == null && uses.get(operand) == 1 ? done.remove(operand) : done.get(operand);
+				}
+				done.put(step.node, step.node.op == MULTIPLY ? product(values) : sum(values, step.minus));
+			}
+			return done.get(root);
+		}
+
+		/**
+		 * Fills in the operands the node of step needs
+		 */
+		private void expand(Step step) {
+			Expression e = step.node;
+			if (e.op == MULTIPLY) {
+				step.operands = e.left == e.right ? new Expression[] {e.left} : new Expression[] {e.left, e.right};
+				return;
+			}
+			List<Expression> terms = new ArrayList<>();
+			List<Boolean> minus = new ArrayList<>();
+			collect(e, terms, minus);
+			step.operands = terms.toArray(new Expression[0]);
+			step.minus = new boolean[terms.size()];
+			for (int i = 0; i < step.minus.length; i++) {
+				step.minus[i] = minus.get(i);
+			}
+		}
+
+		/**
+		 * Arranges for the operands that are not evaluated yet to be evaluated
+		 * before the node that needs them: as parallel tasks, run right away,
+		 * if at least two are large enough (and the tasks not nested too deep),
+		 * and the rest pushed on the stack.
+		 */
+		private void schedule(Expression[] operands, ArrayDeque<Step> stack) {
+			List<Expression> large = new ArrayList<>();
+			for (Expression operand : operands) {
+				if (operand.op == VALUE || done.containsKey(operand)) {
+					continue;
+				}
+				if (parallel(operand)) {
+					if (!large.contains(operand)) {
+						large.add(operand);
+					}
+				} else {
+					stack.push(new Step(operand));
+				}
+			}
+			if (large.size() == 1) {
+				stack.push(new Step(large.get(0)));
+			} else if (!large.isEmpty()) {
+				ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[large.size()];
+				for (int i = 0; i < tasks.length; i++) {
+					Expression operand = large.get(i);
+					tasks[i] = ForkJoinTask.adapt(() -> new Evaluator(pool, depth+1, done, uses).evaluate(operand));
+				}
+				Parallel.invokeAll(pool, tasks);
+			}
+		}
+
+		private boolean parallel(Expression e) {
+			return pool != null && depth < MAX_TASK_DEPTH && e.size >= ArithmeticConfig.getParallelThreshold();
+		}
+
+		/**
+		 * True if e is evaluated on its own rather than flattened into a sum
+		 */
+		private boolean shared(Expression e) {
+			return uses.getOrDefault(e, 1) > 1 || done.containsKey(e);
+		}
+
+		private static PackedBigInteger product(PackedBigInteger[] values) {
+			if (values.length == 1) {
+				return PackedBigInteger.square(values[0]);
+			}
+			return PackedBigInteger.multiply(values[0], values[1]);
+		}
+
+		/**
+		 * Adds up a chain of adds, subtracts and negations as one signed sum of
+		 * its terms, in one accumulation pass and one carry pass.
+		 */
+		private PackedBigInteger sum(PackedBigInteger[] values, boolean[] minus) {
+			int len = 0;
+			for (PackedBigInteger v : values) {
+				len = Math.max(len, v.limbs.length);
+			}
+			if (acc.length < len) {
+				acc = new long[len];
+				res = new int[len+2];
+			}
+			for (int k = 0; k < len; k++) {
+				acc[k] = 0;
+			}
+			for (int i = 0; i < values.length; i++) {
+				int[] limbs = values[i].limbs;
+				if (values[i].negative != minus[i]) {
+					for (int k = 0; k < limbs.length; k++) {
+						acc[k] -= limbs[k];
+					}
+				} else {
+					for (int k = 0; k < limbs.length; k++) {
+						acc[k] += limbs[k];
+					}
+				}
+			}
+			boolean negative = false;
+			int n = Limbs.carryColumns(acc, len, res);
+			if (n < 0) {
+				// the sum is negative: normalize its magnitude instead
+				for (int k = 0; k < len; k++) {
+					acc[k] = -acc[k];
+				}
+				negative = true;
+				n = Limbs.carryColumns(acc, len, res);
+			}
+			if (n == 0) {
+				return PackedBigInteger.ZERO;
+			}
+			int[] limbs = new int[n];
+			System.arraycopy(res, 0, limbs, 0, n);
+			return new PackedBigInteger(negative, limbs);
+		}
+
+		/**
+		 * Flattens the adds, subtracts and negations under e into terms, each
+		 * with a flag for whether it is subtracted. A shared node below e is a
+		 * term, not flattened. Runs on an explicit stack, as sums built in a
+		 * loop nest as deep as they have terms.
+		 */
+		private void collect(Expression e, List<Expression> terms, List<Boolean> minus) {
+			ArrayDeque<Expression> nodes = new ArrayDeque<>();
+			ArrayDeque<Boolean> negated = new ArrayDeque<>();
+			nodes.push(e);
+			negated.push(false);
+			while (!nodes.isEmpty()) {
+				Expression node = nodes.pop();
+				boolean neg = negated.pop();
+				if (node != e && shared(node)) {
+					terms.add(node);
+					minus.add(neg);
+					continue;
+				}
+				switch (node.op) {
+				case ADD:
+				case SUBTRACT:
+					nodes.push(node.right);
+					negated.push(node.op == SUBTRACT ? !neg : neg);
+					nodes.push(node.left);
+					negated.push(neg);
+					break;
+				case NEGATE:
+					nodes.push(node.left);
+					negated.push(!neg);
+					break;
+				default:
+					terms.add(node);
+					minus.add(neg);
+				}
+			}
+		}
+	}
+}
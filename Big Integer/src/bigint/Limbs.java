@@ -0,0 +1,353 @@
+package bigint;
+
+/**
+ * Magnitude kernels shared by PackedBigInteger.
+ *
+ * A magnitude is an int array of base 10^9 limbs. Like the DigitNode list in
+ * BigInteger, the Least Significant limb is stored FIRST. For instance, the
+ * integer 12345678901234567890 would be stored as:
+ *    234567890, 345678901, 12
+ *
+ * Magnitudes returned by the public-facing kernels carry no zero limbs at the
+ * most significant end, so zero is the empty array.
+ */
+final class Limbs {
+
+	/**
+	 * Radix of a single limb
+	 */
+	static final int BASE = 1_000_000_000;
+
+	/**
+	 * Number of decimal digits held by a full limb
+	 */
+	static final int DIGITS_PER_LIMB = 9;
+
+	/**
+	 * The zero magnitude
+	 */
+	static final int[] ZERO = new int[0];
+
+	private Limbs() {
+	}
+
+	/**
+	 * Compares two trimmed magnitudes.
+	 *
+	 * @param a First magnitude
+	 * @param b Second magnitude
+	 * @return Negative, zero or positive as a is less than, equal to or greater than b
+	 */
+	static int compare(int[] a, int[] b) {
+		if (a.length != b.length) {
+			return a.length < b.length ? -1 : 1;
+		}
+		for (int i = a.length-1; i >= 0; i--) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns a + b as a new trimmed magnitude.
+	 */
+	static int[] add(int[] a, int[] b) {
+		int[] res = new int[Math.max(a.length, b.length)+1];
+		add(a, b, res);
+		return trim(res);
+	}
+
+	/**
+	 * Writes a + b into res, which has room for the longer operand plus one
+	 * limb, and returns the length of the sum once trimmed.
+	 */
+	static int add(int[] a, int[] b, int[] res) {
+		if (a.length < b.length) {
+			int[] t = a;
+			a = b;
+			b = t;
+		}
+		int carry = 0;
+		int i = 0;
+		for (; i < b.length; i++) {
+			int sum = a[i] + b[i] + carry;
+			carry = sum >= BASE ? 1 : 0;
+			res[i] = sum - carry*BASE;
+		}
+		for (; i < a.length; i++) {
+			int sum = a[i] + carry;
+			carry = sum >= BASE ? 1 : 0;
+			res[i] = sum - carry*BASE;
+		}
+		res[i] = carry;
+		return i + carry;
+	}
+
+	/**
+	 * Returns a - b as a new trimmed magnitude. The caller guarantees a >= b.
+	 */
+	static int[] subtract(int[] a, int[] b) {
+		int[] res = new int[a.length];
+		subtract(a, b, res);
+		return trim(res);
+	}
+
+	/**
+	 * Writes a - b into res, which has room for a.length limbs, and returns the
+	 * length of the difference once trimmed. The caller guarantees a >= b.
+	 */
+	static int subtract(int[] a, int[] b, int[] res) {
+		int borrow = 0;
+		int i = 0;
+		for (; i < b.length; i++) {
+			int diff = a[i] - b[i] - borrow;
+			borrow = diff < 0 ? 1 : 0;
+			res[i] = diff + borrow*BASE;
+		}
+		for (; i < a.length; i++) {
+			int diff = a[i] - borrow;
+			borrow = diff < 0 ? 1 : 0;
+			res[i] = diff + borrow*BASE;
+		}
+		int len = a.length;
+		while (len > 0 && res[len-1] == 0) {
+			len--;
+		}
+		return len;
+	}
+
+	/**
+	 * Returns a * b as a new trimmed magnitude. The algorithm is chosen by
+	 * Multiplier according to the operand sizes.
+	 */
+	static int[] multiply(int[] a, int[] b) {
+		if (a.length == 0 || b.length == 0) {
+			return ZERO;
+		}
+		return trim(Multiplier.multiply(a, b));
+	}
+
+	/**
+	 * Returns a * a as a new trimmed magnitude. Multiplier picks the squaring
+	 * variant of the algorithm suited to the operand size.
+	 */
+	static int[] square(int[] a) {
+		if (a.length == 0) {
+			return ZERO;
+		}
+		return trim(Multiplier.square(a));
+	}
+
+	/**
+	 * Classic O(n*m) product. Each row is accumulated straight into the result
+	 * so no partial products are materialized. The result has exactly
+	 * a.length + b.length limbs and is not trimmed.
+	 *
+	 * Rows are summed into longs without carrying. A limb product is below
+	 * 10^18, so ROWS_PER_CARRY of them fit in a long next to a normalized limb,
+	 * and the carries (and their divisions) are only propagated once per that
+	 * many rows. This keeps the inner loop free of any dependency between steps.
+	 */
+	static int[] schoolbook(int[] a, int[] b) {
+		long[] acc = new long[a.length+b.length];
+		schoolbook(a, b, acc);
+		int[] res = new int[acc.length];
+		for (int k = 0; k < res.length; k++) {
+			res[k] = (int) acc[k];
+		}
+		return res;
+	}
+
+	/**
+	 * Schoolbook product into acc, whose first a.length + b.length entries the
+	 * caller has zeroed. They come back as normalized limbs, so acc can be a
+	 * scratch buffer reused across products.
+	 */
+	static void schoolbook(int[] a, int[] b, long[] acc) {
+		schoolbook(a, a.length, b, b.length, acc);
+	}
+
+	/**
+	 * Schoolbook product of the first aLen limbs of a and the first bLen limbs
+	 * of b, added into acc. The entries of acc must already be normalized
+	 * limbs (zero, or a value being accumulated into), with room for the sum
+	 * and its final carry.
+	 */
+	static void schoolbook(int[] a, int aLen, int[] b, int bLen, long[] acc) {
+		int carried = 0;
+		for (int i = 0; i < aLen; i++) {
+			long ai = a[i];
+			if (ai != 0) {
+				for (int j = 0; j < bLen; j++) {
+					acc[i+j] += ai*b[j];
+				}
+			}
+			if (i - carried == ROWS_PER_CARRY-1 || i == aLen-1) {
+				propagateCarries(acc, carried, i+bLen);
+				carried = i+1;
+			}
+		}
+	}
+
+	/**
+	 * Schoolbook square. Each cross product a[i]*a[j] with i < j is computed
+	 * once, the cross sum is doubled, and the squares a[i]^2 are added on the
+	 * diagonal in the same pass, which takes about half the limb products of
+	 * schoolbook(a, a). The result has exactly 2 * a.length limbs and is not
+	 * trimmed.
+	 */
+	static int[] squareSchoolbook(int[] a) {
+		long[] acc = new long[2*a.length];
+		int carried = 0;
+		for (int i = 0; i < a.length; i++) {
+			long ai = a[i];
+			if (ai != 0) {
+				for (int j = i+1; j < a.length; j++) {
+					acc[i+j] += ai*a[j];
+				}
+			}
+			if (i - carried == ROWS_PER_CARRY-1 || i == a.length-1) {
+				propagateCarries(acc, carried, i+a.length);
+				carried = i+1;
+			}
+		}
+		int[] res = new int[acc.length];
+		long carry = 0;
+		for (int k = 0; k < res.length; k++) {
+			long t = 2*acc[k] + carry;
+			if ((k & 1) == 0) {
+				long d = a[k >> 1];
+				t += d*d;
+			}
+			carry = t / BASE;
+			res[k] = (int) (t - carry*BASE);
+		}
+		return res;
+	}
+
+	/**
+	 * Schoolbook product restricted to the result columns in [from, to): returns
+	 * the sum of a[i]*b[j]*BASE^(i+j-from) over from <= i+j < to, modulo
+	 * BASE^(to-from), as to-from untrimmed limbs. The carries out of the columns
+	 * below from are NOT included, so the caller has to allow for that error.
+	 */
+	static int[] schoolbookColumns(int[] a, int[] b, int from, int to) {
+		long[] acc = new long[to-from];
+		int carried = 0;
+		for (int i = 0; i < a.length; i++) {
+			long ai = a[i];
+			int jFrom = Math.max(0, from-i);
+			int jTo = Math.min(b.length, to-i);
+			if (ai != 0) {
+				for (int j = jFrom; j < jTo; j++) {
+					acc[i+j-from] += ai*b[j];
+				}
+			}
+			if (i - carried == ROWS_PER_CARRY-1 || i == a.length-1) {
+				propagateCarries(acc, Math.max(0, carried-from), Math.min(acc.length, i+b.length-from));
+				carried = i+1;
+			}
+		}
+		int[] res = new int[acc.length];
+		for (int k = 0; k < res.length; k++) {
+			res[k] = (int) acc[k];
+		}
+		return res;
+	}
+
+	/**
+	 * Number of limb products that can be summed into a long holding a limb
+	 */
+	static final int ROWS_PER_CARRY = 8;
+
+	/**
+	 * Normalizes acc[from..to) to limbs below BASE, carrying upward. Only the
+	 * columns the last rows touched need the division; past to the limbs are
+	 * already normalized and the carry out only ripples until it dies out.
+	 */
+	private static void propagateCarries(long[] acc, int from, int to) {
+		long carry = 0;
+		int k = from;
+		for (; k < to; k++) {
+			long t = acc[k] + carry;
+			carry = t / BASE;
+			acc[k] = t - carry*BASE;
+		}
+		for (; carry != 0 && k < acc.length; k++) {
+			long t = acc[k] + carry;
+			carry = t / BASE;
+			acc[k] = t - carry*BASE;
+		}
+	}
+
+	/**
+	 * Carries the signed column sums acc[0, len) into base 10^9 limbs in res,
+	 * which needs room for len+2 of them: a long carry is below 2^63 / BASE,
+	 * which takes at most 2 more limbs. Returns the trimmed length, or -1 if
+	 * the columns add up to a negative number.
+	 */
+	static int carryColumns(long[] acc, int len, int[] res) {
+		long carry = 0;
+		for (int k = 0; k < len; k++) {
+			long v = acc[k] + carry;
+			carry = Math.floorDiv(v, BASE);
+			res[k] = (int) (v - carry*BASE);
+		}
+		if (carry < 0) {
+			return -1;
+		}
+		int n = len;
+		for (; carry != 0; n++) {
+			res[n] = (int) (carry % BASE);
+			carry /= BASE;
+		}
+		while (n > 0 && res[n-1] == 0) {
+			n--;
+		}
+		return n;
+	}
+
+	/**
+	 * Drops zero limbs from the most significant end. Returns the same array if
+	 * there are none to drop.
+	 */
+	static int[] trim(int[] a) {
+		int len = a.length;
+		while (len > 0 && a[len-1] == 0) {
+			len--;
+		}
+		if (len == a.length) {
+			return a;
+		}
+		if (len == 0) {
+			return ZERO;
+		}
+		int[] res = new int[len];
+		System.arraycopy(a, 0, res, 0, len);
+		return res;
+	}
+
+	/**
+	 * Number of decimal digits in a trimmed magnitude (0 for zero).
+	 */
+	static int numDigits(int[] a) {
+		if (a.length == 0) {
+			return 0;
+		}
+		return (a.length-1)*DIGITS_PER_LIMB + digitCount(a[a.length-1]);
+	}
+
+	/**
+	 * Number of decimal digits in a single positive limb.
+	 */
+	static int digitCount(int limb) {
+		int count = 1;
+		while (limb >= 10) {
+			limb /= 10;
+			count++;
+		}
+		return count;
+	}
+}
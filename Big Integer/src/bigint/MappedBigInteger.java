@@ -0,0 +1,468 @@
+package bigint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A big integer whose magnitude lives in a memory-mapped file instead of on
+ * the heap, for values too large to hold in memory even as packed limbs.
+ *
+ * The file is in the binary form of PackedBigInteger (see writeBinary), so a
+ * value written by PackedBigInteger.writeBinary can be opened here, and a
+ * result computed here can be read back with PackedBigInteger.readBinary once
+ * it fits in memory. The file is mapped read-only in segments of at most
+ * SEGMENT_LIMBS limbs, so values of any length the format allows (up to
+ * 2^31-1 limbs, about 19 billion digits) can be mapped; the operating system
+ * pages the limbs in and out as they are touched.
+ *
+ * add and multiply stream their operands through heap blocks of a fixed
+ * number of limbs and write the result to a new file, so their heap use is
+ * bounded by a few blocks whatever the size of the operands. add makes a
+ * single pass. multiply splits both operands into blocks and sums the block
+ * products column by column, each one computed in memory by Limbs.multiply
+ * (and so with Karatsuba, Toom-Cook or the NTT as the block size calls for).
+ * It reads the operands about (length / block) times over, which the page
+ * cache absorbs as long as they fit in RAM.
+ *
+ * Instances are immutable. Closing one closes its file channel; the mapping
+ * itself is released by the garbage collector, as for any MappedByteBuffer.
+ */
+public final class MappedBigInteger implements Closeable {
+
+	/**
+	 * Limbs mapped by one MappedByteBuffer, 1 GB
+	 */
+	private static final int SEGMENT_SHIFT = 28;
+	private static final int SEGMENT_LIMBS = 1 << SEGMENT_SHIFT;
+
+	/**
+	 * Limbs in one heap block of add and multiply, about 9.4 million digits
+	 */
+	private static final int BLOCK_LIMBS = 1 << 20;
+
+	/**
+	 * Bytes before the first limb: the int holding the signed limb count
+	 */
+	private static final int HEADER_BYTES = 4;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * True if this is a negative integer
+	 */
+	private final boolean negative;
+
+	/**
+	 * Number of limbs of the magnitude, the top one not zero
+	 */
+	private final int length;
+
+	private MappedBigInteger(Path file, FileChannel channel, MappedByteBuffer[] segments,
+			boolean negative, int length) {
+		this.file = file;
+		this.channel = channel;
+		this.segments = segments;
+		this.negative = negative;
+		this.length = length;
+	}
+
+	/**
+	 * Opens a file holding an integer in the binary form of PackedBigInteger
+	 * and maps it. Only the header and the file size are checked; the limbs
+	 * are not read until used.
+	 *
+	 * @param file File to map
+	 * @return MappedBigInteger backed by the file
+	 * @throws IOException If the file cannot be opened or mapped
+	 * @throws IllegalArgumentException If the file size does not match its header
+	 */
+	public static MappedBigInteger open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+				// read the whole header
+			}
+			int count = header.hasRemaining() ? Integer.MIN_VALUE : header.getInt(0);
+			if (count == Integer.MIN_VALUE
+					|| channel.size() != HEADER_BYTES + 4L*Math.abs(count)) {
+				throw new IllegalArgumentException("Incorrect binary format");
+			}
+			int len = Math.abs(count);
+			MappedByteBuffer[] segments = new MappedByteBuffer[(len + SEGMENT_LIMBS-1) >>> SEGMENT_SHIFT];
+			for (int s = 0; s < segments.length; s++) {
+				long from = (long) s << SEGMENT_SHIFT;
+				long limbs = Math.min(SEGMENT_LIMBS, len - from);
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER_BYTES + 4*from, 4*limbs);
+			}
+			return new MappedBigInteger(file, channel, segments, count < 0, len);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a value to a new file (replacing any existing one) and maps it.
+	 *
+	 * @param file File to write
+	 * @param value Value to store
+	 * @return MappedBigInteger backed by the file
+	 * @throws IOException If the file cannot be written or mapped
+	 */
+	public static MappedBigInteger create(Path file, PackedBigInteger value) throws IOException {
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			value.writeBinary(out);
+		}
+		return open(file);
+	}
+
+	/**
+	 * Adds the first and second big integers into a new file (replacing any
+	 * existing one), streaming both through heap blocks. Either or both may be
+	 * negative.
+	 *
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @param file File to write the sum to
+	 * @return MappedBigInteger backed by the file
+	 * @throws IOException If a file cannot be read or written
+	 * @throws IllegalArgumentException If file is the file of first or second
+	 * @throws ArithmeticException If the sum has more limbs than the format allows
+	 */
+	public static MappedBigInteger add(MappedBigInteger first, MappedBigInteger second, Path file)
+			throws IOException {
+		return add(first, second, file, BLOCK_LIMBS);
+	}
+
+	static MappedBigInteger add(MappedBigInteger first, MappedBigInteger second, Path file,
+			int block) throws IOException {
+		checkOutput(file, first, second);
+		try (Writer out = new Writer(file)) {
+			int[] x = new int[block];
+			int[] y = new int[block];
+			int[] r = new int[block];
+			if (first.negative == second.negative) {
+				int n = Math.max(first.length, second.length);
+				if (n == Integer.MAX_VALUE) {
+					throw new ArithmeticException("Sum too large for a mapped integer");
+				}
+				int carry = 0;
+				for (int k = 0; k < n; k += block) {
+					int m = Math.min(block, n-k);
+					first.readBlock(k, m, x);
+					second.readBlock(k, m, y);
+					for (int i = 0; i < m; i++) {
+						int s = x[i] + y[i] + carry;
+						carry = s >= Limbs.BASE ? 1 : 0;
+						r[i] = s - carry*Limbs.BASE;
+					}
+					out.write(r, m);
+				}
+				if (carry != 0) {
+					r[0] = carry;
+					out.write(r, 1);
+				}
+				return out.finish(first.negative);
+			}
+			// subtract the smaller magnitude from the larger, keeping its sign
+			int cmp = compareMagnitudes(first, second, x, y);
+			if (cmp == 0) {
+				return out.finish(false);
+			}
+			MappedBigInteger a = cmp > 0 ? first : second;
+			MappedBigInteger b = cmp > 0 ? second : first;
+			int borrow = 0;
+			for (int k = 0; k < a.length; k += block) {
+				int m = Math.min(block, a.length-k);
+				a.readBlock(k, m, x);
+				b.readBlock(k, m, y);
+				for (int i = 0; i < m; i++) {
+					int d = x[i] - y[i] - borrow;
+					borrow = d < 0 ? 1 : 0;
+					r[i] = d + borrow*Limbs.BASE;
+				}
+				out.write(r, m);
+			}
+			return out.finish(a.negative);
+		}
+	}
+
+	/**
+	 * Multiplies the first and second big integers into a new file (replacing
+	 * any existing one), one pair of heap blocks at a time.
+	 *
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @param file File to write the product to
+	 * @return MappedBigInteger backed by the file
+	 * @throws IOException If a file cannot be read or written
+	 * @throws IllegalArgumentException If file is the file of first or second
+	 * @throws ArithmeticException If the product has more limbs than the format allows
+	 */
+	public static MappedBigInteger multiply(MappedBigInteger first, MappedBigInteger second, Path file)
+			throws IOException {
+		return multiply(first, second, file, BLOCK_LIMBS);
+	}
+
+	static MappedBigInteger multiply(MappedBigInteger first, MappedBigInteger second, Path file,
+			int block) throws IOException {
+		checkOutput(file, first, second);
+		long total = (long) first.length + second.length;
+		if (total >= Integer.MAX_VALUE) {
+			throw new ArithmeticException("Product too large for a mapped integer");
+		}
+		try (Writer out = new Writer(file)) {
+			if (first.length == 0 || second.length == 0) {
+				return out.finish(false);
+			}
+			int na = (first.length + block-1) / block;
+			int nb = (second.length + block-1) / block;
+			// window[0, block) is output block s; the rest holds what the
+			// products so far carry into the blocks above it
+			int[] window = new int[2*block+1];
+			int[] x = new int[block];
+			int[] y = new int[block];
+			long written = 0;
+			for (int s = 0; written < total; s++) {
+				for (int i = Math.max(0, s-nb+1); i <= Math.min(s, na-1); i++) {
+					int[] ai = first.block(i, block, x);
+					int[] bj = second.block(s-i, block, y);
+					if (ai.length != 0 && bj.length != 0) {
+						addInto(window, Limbs.multiply(ai, bj));
+					}
+				}
+				int m = (int) Math.min(block, total-written);
+				out.write(window, m);
+				written += m;
+				System.arraycopy(window, block, window, 0, block+1);
+				for (int k = block+1; k < window.length; k++) {
+					window[k] = 0;
+				}
+			}
+			return out.finish(first.negative != second.negative);
+		}
+	}
+
+	/**
+	 * Rejects an output file that backs one of the operands: the writer
+	 * truncates it while it is still mapped, and reading the operand would
+	 * then crash the JVM rather than throw.
+	 */
+	private static void checkOutput(Path file, MappedBigInteger... operands) throws IOException {
+		if (!Files.exists(file)) {
+			return;
+		}
+		for (MappedBigInteger operand : operands) {
+			if (Files.exists(operand.file) && Files.isSameFile(file, operand.file)) {
+				throw new IllegalArgumentException("Output file is an operand: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Adds the magnitude p into window, starting at limb 0.
+	 */
+	private static void addInto(int[] window, int[] p) {
+		int carry = 0;
+		int k = 0;
+		for (; k < p.length; k++) {
+			int s = window[k] + p[k] + carry;
+			carry = s >= Limbs.BASE ? 1 : 0;
+			window[k] = s - carry*Limbs.BASE;
+		}
+		for (; carry != 0; k++) {
+			int s = window[k] + 1;
+			carry = s == Limbs.BASE ? 1 : 0;
+			window[k] = s - carry*Limbs.BASE;
+		}
+	}
+
+	/**
+	 * Compares the magnitudes of a and b, from the most significant block down.
+	 */
+	private static int compareMagnitudes(MappedBigInteger a, MappedBigInteger b, int[] x, int[] y) {
+		if (a.length != b.length) {
+			return a.length < b.length ? -1 : 1;
+		}
+		int block = x.length;
+		for (int hi = a.length; hi > 0; hi -= block) {
+			int from = Math.max(0, hi-block);
+			a.readBlock(from, hi-from, x);
+			b.readBlock(from, hi-from, y);
+			for (int i = hi-from-1; i >= 0; i--) {
+				if (x[i] != y[i]) {
+					return x[i] < y[i] ? -1 : 1;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Copies limbs [from, from + n) into dst, with zeros for limbs past the
+	 * top of the magnitude.
+	 */
+	private void readBlock(int from, int n, int[] dst) {
+		int k = 0;
+		int end = Math.min(n, length-from);
+		while (k < end) {
+			int pos = from + k;
+			int off = pos & (SEGMENT_LIMBS-1);
+			int m = Math.min(end-k, SEGMENT_LIMBS-off);
+			ByteBuffer view = segments[pos >>> SEGMENT_SHIFT].duplicate();
+			view.position(4*off);
+			view.asIntBuffer().get(dst, k, m);
+			k += m;
+		}
+		for (; k < n; k++) {
+			dst[k] = 0;
+		}
+	}
+
+	/**
+	 * Returns block i of the magnitude, of up to size limbs, trimmed. It is
+	 * read into buf, which is returned unless the block needs trimming.
+	 */
+	private int[] block(int i, int size, int[] buf) {
+		int from = i*size;
+		int n = Math.min(size, length-from);
+		readBlock(from, size, buf);
+		while (n > 0 && buf[n-1] == 0) {
+			n--;
+		}
+		if (n == size) {
+			return buf;
+		}
+		int[] res = n == 0 ? Limbs.ZERO : new int[n];
+		System.arraycopy(buf, 0, res, 0, n);
+		return res;
+	}
+
+	/**
+	 * @return True if this is a negative integer
+	 */
+	public boolean isNegative() {
+		return negative;
+	}
+
+	/**
+	 * @return Number of decimal digits in this integer, 0 for zero
+	 */
+	public long numDigits() {
+		if (length == 0) {
+			return 0;
+		}
+		int[] top = new int[1];
+		readBlock(length-1, 1, top);
+		return (long) (length-1)*Limbs.DIGITS_PER_LIMB + Limbs.digitCount(top[0]);
+	}
+
+	/**
+	 * @return The file backing this integer
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Reads the whole value onto the heap.
+	 *
+	 * @return PackedBigInteger with the same value
+	 */
+	public PackedBigInteger toPackedBigInteger() {
+		if (length == 0) {
+			return PackedBigInteger.ZERO;
+		}
+		int[] limbs = new int[length];
+		readBlock(0, length, limbs);
+		return new PackedBigInteger(negative, limbs);
+	}
+
+	/**
+	 * Closes the file channel. The mapping stays valid until it is garbage
+	 * collected, but the instance must not be used afterwards.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "MappedBigInteger[" + file + ", " + (negative ? "-" : "") + numDigits() + " digits]";
+	}
+
+	/**
+	 * Writes limbs sequentially to a new file, least significant first, after
+	 * room for the header. finish then drops the zero limbs at the top, fills
+	 * in the header and maps the file.
+	 */
+	private static final class Writer implements Closeable {
+		private final Path file;
+		private final FileChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+		private long count;
+		/** Limbs up to and including the last non-zero one written */
+		private long trimmed;
+
+		Writer(Path file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			channel.position(HEADER_BYTES);
+		}
+
+		void write(int[] limbs, int n) throws IOException {
+			for (int k = 0; k < n; k++) {
+				if (!buf.hasRemaining()) {
+					flush();
+				}
+				buf.putInt(limbs[k]);
+				if (limbs[k] != 0) {
+					trimmed = count+k+1;
+				}
+			}
+			count += n;
+		}
+
+		private void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			buf.clear();
+		}
+
+		MappedBigInteger finish(boolean negative) throws IOException {
+			if (trimmed > Integer.MAX_VALUE-1) {
+				throw new ArithmeticException("Result too large for a mapped integer");
+			}
+			flush();
+			int len = (int) trimmed;
+			channel.truncate(HEADER_BYTES + 4L*len);
+			buf.putInt(0, negative && len != 0 ? -len : len).limit(HEADER_BYTES);
+			while (buf.hasRemaining()) {
+				channel.write(buf, buf.position());
+			}
+			buf.clear();
+			channel.close();
+			return open(file);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package bigint;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times the hot operations of the package: parse, add, multiply
+ * and toString of BigInteger and PackedBigInteger, plus the multiplication
+ * tier that each packed product or square was dispatched to. Squares count as
+ * products, and a BigInteger operation that is handed to PackedBigInteger is
+ * counted under both classes.
+ *
+ * Like Trace, every call site is guarded by ENABLED, a static final flag read
+ * once from the bigint.metrics system property, so with metrics off the JIT
+ * drops the timing code and the counters are never even allocated. When it is
+ * on, each operation costs two System.nanoTime calls and a few LongAdder
+ * increments, which stay cheap under contention. Allocated bytes per
+ * operation are measured only with -Dbigint.metrics.allocations=true as well,
+ * as reading the thread's allocation counter costs more than the rest put
+ * together.
+ *
+ * Each operation also keeps a histogram by operand size: bucket 0 holds
+ * operands of no digits, and bucket i > 0 those of 2^(i-1) to 2^i - 1 digits.
+ *
+ * With metrics on, every operation is also offered to Flight Recorder as a
+ * bigint.Operation event (see OperationEvents) if the jdk.jfr module is
+ * present, which costs little unless a recording enables it, and the
+ * counters are registered as the MXBean bigint:type=Metrics.
+ */
+final class Metrics {
+
+	/**
+	 * True if the JVM was started with -Dbigint.metrics=true
+	 */
+	static final boolean ENABLED = Boolean.getBoolean("bigint.metrics");
+
+	/**
+	 * True if allocated bytes are measured too, with
+	 * -Dbigint.metrics.allocations=true
+	 */
+	static final boolean ALLOCATIONS = ENABLED && Boolean.getBoolean("bigint.metrics.allocations");
+
+	/**
+	 * True if operations are offered to Flight Recorder. OperationEvents is
+	 * never loaded otherwise.
+	 */
+	private static final boolean EVENTS = ENABLED && ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+	/**
+	 * Operations
+	 */
+	static final int LIST_PARSE = 0;
+	static final int LIST_ADD = 1;
+	static final int LIST_MULTIPLY = 2;
+	static final int LIST_TO_STRING = 3;
+	static final int PACKED_PARSE = 4;
+	static final int PACKED_ADD = 5;
+	static final int PACKED_MULTIPLY = 6;
+	static final int PACKED_TO_STRING = 7;
+
+	/**
+	 * Multiplication tiers, recorded alongside PACKED_MULTIPLY
+	 */
+	static final int SCHOOLBOOK = 8;
+	static final int KARATSUBA = 9;
+	static final int TOOM_COOK = 10;
+	static final int NTT = 11;
+	static final int UNBALANCED = 12;
+
+	/**
+	 * No tier to record
+	 */
+	static final int NONE = -1;
+
+	private static final String[] NAMES = {
+			"list.parse", "list.add", "list.multiply", "list.toString",
+			"packed.parse", "packed.add", "packed.multiply", "packed.toString",
+			"tier.schoolbook", "tier.karatsuba", "tier.toomCook3", "tier.ntt", "tier.unbalanced"
+	};
+
+	static final int BUCKETS = 32;
+
+	private static final String MBEAN_NAME = "bigint:type=Metrics";
+
+	private static final Stats[] STATS;
+
+	private static final com.sun.management.ThreadMXBean THREADS;
+
+	static {
+		if (ENABLED) {
+			STATS = new Stats[NAMES.length];
+			for (int i = 0; i < STATS.length; i++) {
+				STATS[i] = new Stats();
+			}
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			THREADS = ALLOCATIONS && threads instanceof com.sun.management.ThreadMXBean
+					? (com.sun.management.ThreadMXBean) threads : null;
+			register();
+		} else {
+			STATS = null;
+			THREADS = null;
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * @return Bytes allocated so far by the current thread, or 0 if
+	 *         allocations are not measured
+	 */
+	static long allocatedBytes() {
+		if (THREADS == null) {
+			return 0;
+		}
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Records one completed operation.
+	 *
+	 * @param op Operation
+	 * @param tier Multiplication tier, also recorded, or NONE
+	 * @param digits Operand size the operation is bucketed by
+	 * @param start System.nanoTime() when the operation started
+	 * @param bytes allocatedBytes() when the operation started
+	 */
+	static void record(int op, int tier, long digits, long start, long bytes) {
+		long nanos = System.nanoTime() - start;
+		long allocated = THREADS == null ? 0 : allocatedBytes() - bytes;
+		int bucket = bucket(digits);
+		STATS[op].add(bucket, nanos, allocated);
+		if (tier != NONE) {
+			STATS[tier].add(bucket, nanos, allocated);
+		}
+		if (EVENTS) {
+			OperationEvents.emit(NAMES[tier == NONE ? op : tier], digits, nanos, allocated);
+		}
+	}
+
+	private static int bucket(long digits) {
+		return Math.min(BUCKETS-1, 64 - Long.numberOfLeadingZeros(digits));
+	}
+
+	/**
+	 * @return Counters of every operation, in a fixed order, or an empty list
+	 *         if metrics are off
+	 */
+	static List<OperationMetrics> snapshot() {
+		List<OperationMetrics> res = new ArrayList<>();
+		if (!ENABLED) {
+			return res;
+		}
+		for (int i = 0; i < STATS.length; i++) {
+			res.add(STATS[i].snapshot(NAMES[i]));
+		}
+		return res;
+	}
+
+	/**
+	 * Zeroes every counter. Operations running concurrently may be partly
+	 * counted.
+	 */
+	static void reset() {
+		if (!ENABLED) {
+			return;
+		}
+		for (Stats stats : STATS) {
+			stats.reset();
+		}
+	}
+
+	private static void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(MBEAN_NAME));
+		} catch (JMException e) {
+			// another copy of the package (in another class loader) got the name first;
+			// the snapshot API still works
+		}
+	}
+
+	/**
+	 * Counters of one operation
+	 */
+	private static final class Stats {
+		final LongAdder count = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final LongAdder[] bucketCounts = new LongAdder[BUCKETS];
+		final LongAdder[] bucketNanos = new LongAdder[BUCKETS];
+
+		Stats() {
+			for (int i = 0; i < BUCKETS; i++) {
+				bucketCounts[i] = new LongAdder();
+				bucketNanos[i] = new LongAdder();
+			}
+		}
+
+		void add(int bucket, long elapsed, long allocated) {
+			count.increment();
+			nanos.add(elapsed);
+			if (allocated != 0) {
+				bytes.add(allocated);
+			}
+			bucketCounts[bucket].increment();
+			bucketNanos[bucket].add(elapsed);
+		}
+
+		OperationMetrics snapshot(String name) {
+			long[] counts = new long[BUCKETS];
+			long[] times = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = bucketCounts[i].sum();
+				times[i] = bucketNanos[i].sum();
+			}
+			return new OperationMetrics(name, count.sum(), nanos.sum(), bytes.sum(), counts, times);
+		}
+
+		void reset() {
+			count.reset();
+			nanos.reset();
+			bytes.reset();
+			for (int i = 0; i < BUCKETS; i++) {
+				bucketCounts[i].reset();
+				bucketNanos[i].reset();
+			}
+		}
+	}
+
+	/**
+	 * The MXBean over the counters
+	 */
+	private static final class Bean implements MetricsMXBean {
+
+		public Map<String, Long> getCounts() {
+			return collect(OperationMetrics::getCount);
+		}
+
+		public Map<String, Long> getTotalNanos() {
+			return collect(OperationMetrics::getTotalNanos);
+		}
+
+		public Map<String, Long> getAllocatedBytes() {
+			return collect(OperationMetrics::getAllocatedBytes);
+		}
+
+		public long[] bucketCounts(String operation) {
+			return find(operation).getBucketCounts();
+		}
+
+		public long[] bucketNanos(String operation) {
+			return find(operation).getBucketNanos();
+		}
+
+		public void reset() {
+			Metrics.reset();
+		}
+
+		private static Map<String, Long> collect(Function<OperationMetrics, Long> counter) {
+			Map<String, Long> res = new LinkedHashMap<>();
+			for (OperationMetrics m : snapshot()) {
+				res.put(m.getName(), counter.apply(m));
+			}
+			return res;
+		}
+
+		private static OperationMetrics find(String operation) {
+			for (int i = 0; i < NAMES.length; i++) {
+				if (NAMES[i].equals(operation)) {
+					return STATS[i].snapshot(NAMES[i]);
+				}
+			}
+			throw new IllegalArgumentException("Unknown operation: " + operation);
+		}
+	}
+}
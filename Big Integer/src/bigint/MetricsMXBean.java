@@ -0,0 +1,45 @@
+package bigint;
+
+import java.util.Map;
+
+/**
+ * Management interface of the operation counters, registered as
+ * bigint:type=Metrics when the JVM is started with -Dbigint.metrics=true.
+ * Operation names are those of OperationMetrics.getName().
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * @return Number of completed calls, by operation
+	 */
+	Map<String, Long> getCounts();
+
+	/**
+	 * @return Total time spent, in nanoseconds, by operation
+	 */
+	Map<String, Long> getTotalNanos();
+
+	/**
+	 * @return Total bytes allocated, by operation, if allocations are measured
+	 */
+	Map<String, Long> getAllocatedBytes();
+
+	/**
+	 * @param operation Operation name
+	 * @return Calls per operand size bucket, see OperationMetrics
+	 * @throws IllegalArgumentException If there is no such operation
+	 */
+	long[] bucketCounts(String operation);
+
+	/**
+	 * @param operation Operation name
+	 * @return Nanoseconds spent per operand size bucket, see OperationMetrics
+	 * @throws IllegalArgumentException If there is no such operation
+	 */
+	long[] bucketNanos(String operation);
+
+	/**
+	 * Zeroes every counter.
+	 */
+	void reset();
+}
@@ -0,0 +1,389 @@
+package bigint;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Multiplication algorithms for base 10^9 magnitudes, picked by operand size:
+ * schoolbook for small operands, then Karatsuba, then Toom-Cook 3-way, and the
+ * number-theoretic transform in Ntt for the largest. The thresholds are read
+ * from ArithmeticConfig on every call.
+ *
+ * Each tier has a squaring variant that exploits the symmetry of a * a.
+ *
+ * With a parallel pool configured, the independent subproducts of the
+ * unbalanced, Karatsuba and Toom-Cook splits run as tasks once the operands
+ * reach ArithmeticConfig.getParallelThreshold(), and the transforms of the
+ * NTT tier split their stages over the pool.
+ *
+ * Unlike the Limbs kernels, these methods accept magnitudes with zero limbs at
+ * the most significant end, and always return exactly a.length + b.length limbs.
+ */
+final class Multiplier {
+
+	private Multiplier() {
+	}
+
+	/**
+	 * Returns a * b, untrimmed, using the algorithm suited to the operand sizes.
+	 */
+	static int[] multiply(int[] a, int[] b) {
+		int small = Math.min(a.length, b.length);
+		int large = Math.max(a.length, b.length);
+		if (Trace.ENABLED) {
+			Trace.emit("multiply", a.length + " x " + b.length + " limbs");
+		}
+		if (small < ArithmeticConfig.getKaratsubaThreshold()) {
+			return Limbs.schoolbook(a, b);
+		}
+		if (small >= ArithmeticConfig.getNttThreshold() && Ntt.fits(a.length, b.length)) {
+			return Ntt.multiply(a, b, Parallel.pool(small));
+		}
+		if (large >= 2*small) {
+			return unbalanced(a, b);
+		}
+		if (small < ArithmeticConfig.getToomCookThreshold()) {
+			return karatsuba(a, b);
+		}
+		return toomCook3(a, b);
+	}
+
+	/**
+	 * Returns a * a, untrimmed, using the squaring variant of the algorithm
+	 * suited to the operand size.
+	 */
+	static int[] square(int[] a) {
+		int n = a.length;
+		if (Trace.ENABLED) {
+			Trace.emit("square", n + " limbs");
+		}
+		if (n < ArithmeticConfig.getKaratsubaThreshold()) {
+			return Limbs.squareSchoolbook(a);
+		}
+		if (n >= ArithmeticConfig.getNttThreshold() && Ntt.fits(n, n)) {
+			return Ntt.multiply(a, a, Parallel.pool(n));
+		}
+		if (n < ArithmeticConfig.getToomCookThreshold()) {
+			return karatsubaSquare(a);
+		}
+		return toomCook3Square(a);
+	}
+
+	/**
+	 * Returns the Metrics tier that multiply(a, b) starts in, or square(a) when
+	 * both lengths are equal, following the same dispatch. Products with zero
+	 * never get here, and have no tier.
+	 */
+	static int tier(int aLen, int bLen) {
+		int small = Math.min(aLen, bLen);
+		int large = Math.max(aLen, bLen);
+		if (small == 0) {
+			return Metrics.NONE;
+		}
+		if (small < ArithmeticConfig.getKaratsubaThreshold()) {
+			return Metrics.SCHOOLBOOK;
+		}
+		if (small >= ArithmeticConfig.getNttThreshold() && Ntt.fits(aLen, bLen)) {
+			return Metrics.NTT;
+		}
+		if (large >= 2*small) {
+			return Metrics.UNBALANCED;
+		}
+		if (small < ArithmeticConfig.getToomCookThreshold()) {
+			return Metrics.KARATSUBA;
+		}
+		return Metrics.TOOM_COOK;
+	}
+
+	/**
+	 * Slices the longer operand into pieces as long as the shorter one, so each
+	 * partial product is balanced, and accumulates them into the result.
+	 */
+	private static int[] unbalanced(int[] a, int[] b) {
+		if (a.length < b.length) {
+			int[] t = a;
+			a = b;
+			b = t;
+		}
+		ForkJoinPool pool = Parallel.pool(b.length);
+		if (pool == null) {
+			int[] res = new int[a.length+b.length];
+			for (int off = 0; off < a.length; off += b.length) {
+				int[] piece = Arrays.copyOfRange(a, off, Math.min(a.length, off+b.length));
+				addInto(res, off, multiply(piece, b));
+			}
+			return res;
+		}
+		// all pieces at once, at the cost of holding every partial product
+		int pieces = (a.length + b.length-1) / b.length;
+		int[][] as = new int[pieces][];
+		int[][] bs = new int[pieces][];
+		for (int i = 0; i < pieces; i++) {
+			int off = i*b.length;
+			as[i] = Arrays.copyOfRange(a, off, Math.min(a.length, off+b.length));
+			bs[i] = b;
+		}
+		int[][] products = Parallel.multiplyAll(pool, as, bs);
+		int[] res = new int[a.length+b.length];
+		for (int i = 0; i < pieces; i++) {
+			addInto(res, i*b.length, products[i]);
+		}
+		return res;
+	}
+
+	/**
+	 * Karatsuba: with a = a1*B^h + a0 and b = b1*B^h + b0,
+	 *    a*b = z2*B^2h + (z1 - z2 - z0)*B^h + z0
+	 * where z0 = a0*b0, z2 = a1*b1 and z1 = (a0+a1)*(b0+b1).
+	 */
+	static int[] karatsuba(int[] a, int[] b) {
+		int half = (Math.max(a.length, b.length)+1) / 2;
+		int[] a0 = lower(a, half);
+		int[] a1 = upper(a, half);
+		int[] b0 = lower(b, half);
+		int[] b1 = upper(b, half);
+
+		int[][] z = Parallel.multiplyAll(Parallel.pool(Math.min(a.length, b.length)),
+				new int[][] {a0, a1, Limbs.add(a0, a1)},
+				new int[][] {b0, b1, Limbs.add(b0, b1)});
+		int[] z0 = z[0];
+		int[] z2 = z[1];
+		int[] z1 = z[2];
+		subtractFrom(z1, z0);
+		subtractFrom(z1, z2);
+
+		int[] res = new int[a.length+b.length];
+		addInto(res, 0, z0);
+		addInto(res, half, z1);
+		addInto(res, 2*half, z2);
+		return res;
+	}
+
+	/**
+	 * Karatsuba for a * a, where all three half size products are squares:
+	 * z0 = a0^2, z2 = a1^2 and z1 = (a0+a1)^2.
+	 */
+	static int[] karatsubaSquare(int[] a) {
+		int half = (a.length+1) / 2;
+		int[] a0 = lower(a, half);
+		int[] a1 = upper(a, half);
+
+		int[] a01 = Limbs.add(a0, a1);
+		int[][] z = Parallel.multiplyAll(Parallel.pool(a.length),
+				new int[][] {a0, a1, a01}, new int[][] {a0, a1, a01});
+		int[] z0 = z[0];
+		int[] z2 = z[1];
+		int[] z1 = z[2];
+		subtractFrom(z1, z0);
+		subtractFrom(z1, z2);
+
+		int[] res = new int[2*a.length];
+		addInto(res, 0, z0);
+		addInto(res, half, z1);
+		addInto(res, 2*half, z2);
+		return res;
+	}
+
+	/**
+	 * Toom-Cook 3-way, evaluating at 0, 1, -1, 2 and infinity with the
+	 * interpolation sequence from Bodrato and Zanoni. Intermediate values can be
+	 * negative, so they are carried as Signed magnitudes.
+	 */
+	static int[] toomCook3(int[] a, int[] b) {
+		int k = (Math.max(a.length, b.length)+2) / 3;
+		Signed a0 = new Signed(false, slice(a, 0, k));
+		Signed a1 = new Signed(false, slice(a, k, 2*k));
+		Signed a2 = new Signed(false, slice(a, 2*k, a.length));
+		Signed b0 = new Signed(false, slice(b, 0, k));
+		Signed b1 = new Signed(false, slice(b, k, 2*k));
+		Signed b2 = new Signed(false, slice(b, 2*k, b.length));
+
+		// evaluate both operands at 0, -1, 1, 2 and infinity
+		Signed da1 = a2.add(a0);
+		Signed db1 = b2.add(b0);
+		Signed[] pa = {a0, da1.subtract(a1), da1.add(a1), null, a2};
+		Signed[] pb = {b0, db1.subtract(b1), db1.add(b1), null, b2};
+		pa[3] = pa[2].add(a2).twice().subtract(a0);
+		pb[3] = pb[2].add(b2).twice().subtract(b0);
+		Signed[] v = Signed.multiplyAll(Parallel.pool(Math.min(a.length, b.length)), pa, pb);
+		Signed v0 = v[0];
+		Signed vm1 = v[1];
+		Signed v1 = v[2];
+		Signed v2 = v[3];
+		Signed vinf = v[4];
+
+		Signed t2 = v2.subtract(vm1).divide(3);
+		Signed tm1 = v1.subtract(vm1).divide(2);
+		Signed t1 = v1.subtract(v0);
+		t2 = t2.subtract(t1).divide(2);
+		t1 = t1.subtract(tm1).subtract(vinf);
+		t2 = t2.subtract(vinf.twice());
+		tm1 = tm1.subtract(t2);
+
+		// every coefficient of the product polynomial is non-negative
+		int[] res = new int[a.length+b.length];
+		addInto(res, 0, v0.mag);
+		addInto(res, k, tm1.mag);
+		addInto(res, 2*k, t1.mag);
+		addInto(res, 3*k, t2.mag);
+		addInto(res, 4*k, vinf.mag);
+		return res;
+	}
+
+	/**
+	 * Toom-Cook 3-way for a * a: the same evaluation and interpolation as
+	 * toomCook3, with the five pointwise products being squares.
+	 */
+	static int[] toomCook3Square(int[] a) {
+		int k = (a.length+2) / 3;
+		Signed a0 = new Signed(false, slice(a, 0, k));
+		Signed a1 = new Signed(false, slice(a, k, 2*k));
+		Signed a2 = new Signed(false, slice(a, 2*k, a.length));
+
+		Signed da1 = a2.add(a0);
+		Signed[] pa = {a0, da1.subtract(a1), da1.add(a1), null, a2};
+		pa[3] = pa[2].add(a2).twice().subtract(a0);
+		Signed[] v = Signed.multiplyAll(Parallel.pool(a.length), pa, pa);
+		Signed v0 = v[0];
+		Signed vm1 = v[1];
+		Signed v1 = v[2];
+		Signed v2 = v[3];
+		Signed vinf = v[4];
+
+		Signed t2 = v2.subtract(vm1).divide(3);
+		Signed tm1 = v1.subtract(vm1).divide(2);
+		Signed t1 = v1.subtract(v0);
+		t2 = t2.subtract(t1).divide(2);
+		t1 = t1.subtract(tm1).subtract(vinf);
+		t2 = t2.subtract(vinf.twice());
+		tm1 = tm1.subtract(t2);
+
+		int[] res = new int[2*a.length];
+		addInto(res, 0, v0.mag);
+		addInto(res, k, tm1.mag);
+		addInto(res, 2*k, t1.mag);
+		addInto(res, 3*k, t2.mag);
+		addInto(res, 4*k, vinf.mag);
+		return res;
+	}
+
+	/**
+	 * Adds x into res starting at limb off. Zero limbs of x that fall beyond the
+	 * end of res are ignored; the caller guarantees the true sum fits.
+	 */
+	static void addInto(int[] res, int off, int[] x) {
+		int carry = 0;
+		int i = 0;
+		int n = Math.min(x.length, res.length-off);
+		for (; i < n; i++) {
+			int sum = res[off+i] + x[i] + carry;
+			carry = sum >= Limbs.BASE ? 1 : 0;
+			res[off+i] = sum - carry*Limbs.BASE;
+		}
+		for (i += off; carry != 0 && i < res.length; i++) {
+			int sum = res[i] + carry;
+			carry = sum >= Limbs.BASE ? 1 : 0;
+			res[i] = sum - carry*Limbs.BASE;
+		}
+	}
+
+	/**
+	 * Subtracts x from res in place. The caller guarantees res >= x.
+	 */
+	static void subtractFrom(int[] res, int[] x) {
+		int borrow = 0;
+		int i = 0;
+		int n = Math.min(x.length, res.length);
+		for (; i < n; i++) {
+			int diff = res[i] - x[i] - borrow;
+			borrow = diff < 0 ? 1 : 0;
+			res[i] = diff + borrow*Limbs.BASE;
+		}
+		for (; borrow != 0 && i < res.length; i++) {
+			int diff = res[i] - borrow;
+			borrow = diff < 0 ? 1 : 0;
+			res[i] = diff + borrow*Limbs.BASE;
+		}
+	}
+
+	private static int[] lower(int[] a, int n) {
+		return slice(a, 0, n);
+	}
+
+	private static int[] upper(int[] a, int n) {
+		return slice(a, n, a.length);
+	}
+
+	private static int[] slice(int[] a, int from, int to) {
+		to = Math.min(to, a.length);
+		if (from >= to) {
+			return Limbs.ZERO;
+		}
+		return Limbs.trim(Arrays.copyOfRange(a, from, to));
+	}
+
+	/**
+	 * A signed, trimmed magnitude used for the Toom-Cook intermediate values
+	 */
+	private static final class Signed {
+		final boolean negative;
+		final int[] mag;
+
+		Signed(boolean negative, int[] mag) {
+			this.negative = negative && mag.length != 0;
+			this.mag = mag;
+		}
+
+		Signed add(Signed other) {
+			if (negative == other.negative) {
+				return new Signed(negative, Limbs.add(mag, other.mag));
+			}
+			int cmp = Limbs.compare(mag, other.mag);
+			if (cmp >= 0) {
+				return new Signed(negative, Limbs.subtract(mag, other.mag));
+			}
+			return new Signed(other.negative, Limbs.subtract(other.mag, mag));
+		}
+
+		Signed subtract(Signed other) {
+			return add(new Signed(!other.negative, other.mag));
+		}
+
+		/**
+		 * Returns a[i] * b[i] for each i, in parallel if pool is not null. Where
+		 * a and b share an element the product is a square.
+		 */
+		static Signed[] multiplyAll(ForkJoinPool pool, Signed[] a, Signed[] b) {
+			int[][] am = new int[a.length][];
+			int[][] bm = new int[b.length][];
+			for (int i = 0; i < a.length; i++) {
+				am[i] = a[i].mag;
+				bm[i] = b[i].mag;
+			}
+			int[][] products = Parallel.multiplyAll(pool, am, bm);
+			Signed[] res = new Signed[a.length];
+			for (int i = 0; i < a.length; i++) {
+				res[i] = new Signed(a[i].negative != b[i].negative, Limbs.trim(products[i]));
+			}
+			return res;
+		}
+
+		Signed twice() {
+			return new Signed(negative, Limbs.add(mag, mag));
+		}
+
+		/**
+		 * Exact division by a small divisor, most significant limb first
+		 */
+		Signed divide(int divisor) {
+			int[] q = new int[mag.length];
+			long rem = 0;
+			for (int i = mag.length-1; i >= 0; i--) {
+				long cur = rem*Limbs.BASE + mag[i];
+				q[i] = (int) (cur / divisor);
+				rem = cur - (long) q[i]*divisor;
+			}
+			return new Signed(negative, Limbs.trim(q));
+		}
+	}
+}
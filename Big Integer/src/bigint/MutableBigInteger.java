@@ -0,0 +1,443 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * A big integer that is updated in place, for loops that would otherwise
+ * produce a new value per step, such as factorials (multiply by a small
+ * factor) or Fibonacci numbers (add).
+ *
+ * The magnitude lives in a growable array of base 10^9 limbs that is only
+ * ever reallocated to grow, by half again its size, so a loop whose values
+ * stay within the capacity reached allocates nothing. The same holds for
+ * multiplyAdd as long as the operands are below the Karatsuba threshold: the
+ * product is accumulated straight into the magnitude (or, if the signs
+ * differ, into a scratch buffer the instance keeps). Larger products are
+ * computed by Limbs.multiply, which allocates.
+ *
+ * Every update returns this, so calls can be chained. Instances are not
+ * thread-safe. Values are exchanged with the immutable classes through
+ * set and toPackedBigInteger, which copy.
+ */
+public final class MutableBigInteger {
+
+	private static final long[] NO_SCRATCH = new long[0];
+
+	/**
+	 * Magnitude, least significant limb first. Only the first length limbs
+	 * are meaningful; the rest of the array is spare capacity.
+	 */
+	private int[] limbs;
+
+	/**
+	 * Number of limbs of the magnitude, the top one not zero
+	 */
+	private int length;
+
+	/**
+	 * True if this is a negative integer, never for zero
+	 */
+	private boolean negative;
+
+	/**
+	 * Scratch buffers: column sums of multiplyAdd, a product to be subtracted,
+	 * and the limbs of a long operand
+	 */
+	private long[] acc = NO_SCRATCH;
+	private int[] product = Limbs.ZERO;
+	private final int[] small = new int[3];
+
+	/**
+	 * Creates a zero valued integer.
+	 */
+	public MutableBigInteger() {
+		limbs = Limbs.ZERO;
+	}
+
+	/**
+	 * Creates an integer with the given value.
+	 *
+	 * @param value Initial value
+	 */
+	public MutableBigInteger(long value) {
+		limbs = Limbs.ZERO;
+		set(value);
+	}
+
+	/**
+	 * Creates an integer with the given value.
+	 *
+	 * @param value Initial value, which is copied
+	 */
+	public MutableBigInteger(PackedBigInteger value) {
+		limbs = Limbs.ZERO;
+		set(value);
+	}
+
+	/**
+	 * Sets this integer to the given value.
+	 *
+	 * @param value New value
+	 * @return This integer
+	 */
+	public MutableBigInteger set(long value) {
+		int n = toLimbs(value, small);
+		return set(value < 0, small, n);
+	}
+
+	/**
+	 * Sets this integer to the given value, copying its limbs.
+	 *
+	 * @param value New value
+	 * @return This integer
+	 */
+	public MutableBigInteger set(PackedBigInteger value) {
+		return set(value.negative, value.limbs, value.limbs.length);
+	}
+
+	/**
+	 * Sets this integer to the value of another one, copying its limbs.
+	 *
+	 * @param value New value
+	 * @return This integer
+	 */
+	public MutableBigInteger set(MutableBigInteger value) {
+		if (value == this) {
+			return this;
+		}
+		return set(value.negative, value.limbs, value.length);
+	}
+
+	private MutableBigInteger set(boolean negative, int[] src, int len) {
+		ensureCapacity(len);
+		System.arraycopy(src, 0, limbs, 0, len);
+		this.length = len;
+		this.negative = negative && len != 0;
+		return this;
+	}
+
+	/**
+	 * Adds term to this integer. Either may be negative.
+	 *
+	 * @param term Value to add
+	 * @return This integer
+	 */
+	public MutableBigInteger add(long term) {
+		int n = toLimbs(term, small);
+		return add(term < 0, small, n);
+	}
+
+	/**
+	 * Adds term to this integer. Either may be negative.
+	 *
+	 * @param term Value to add
+	 * @return This integer
+	 */
+	public MutableBigInteger add(PackedBigInteger term) {
+		return add(term.negative, term.limbs, term.limbs.length);
+	}
+
+	/**
+	 * Adds term to this integer. Either may be negative, and term may be this
+	 * integer itself.
+	 *
+	 * @param term Value to add, which is not modified unless it is this
+	 * @return This integer
+	 */
+	public MutableBigInteger add(MutableBigInteger term) {
+		return add(term.negative, term.limbs, term.length);
+	}
+
+	/**
+	 * Adds the first bLen limbs of b, with the given sign, into this integer.
+	 * b may be this integer's own array, as long as the signs agree.
+	 */
+	private MutableBigInteger add(boolean bNegative, int[] b, int bLen) {
+		if (bLen == 0) {
+			return this;
+		}
+		if (length == 0) {
+			return set(bNegative, b, bLen);
+		}
+		if (negative == bNegative) {
+			int n = Math.max(length, bLen);
+			boolean self = b == limbs;
+			ensureCapacity(n+1);
+			if (self) {
+				// ensureCapacity may have replaced the array
+				b = limbs;
+			}
+			int[] a = limbs;
+			int common = Math.min(length, bLen);
+			int carry = 0;
+			int k = 0;
+			for (; k < common; k++) {
+				int sum = a[k] + b[k] + carry;
+				carry = sum >= Limbs.BASE ? 1 : 0;
+				a[k] = sum - carry*Limbs.BASE;
+			}
+			for (; k < bLen; k++) {
+				int sum = b[k] + carry;
+				carry = sum >= Limbs.BASE ? 1 : 0;
+				a[k] = sum - carry*Limbs.BASE;
+			}
+			for (; carry != 0 && k < length; k++) {
+				int sum = a[k] + 1;
+				carry = sum == Limbs.BASE ? 1 : 0;
+				a[k] = sum - carry*Limbs.BASE;
+			}
+			if (carry != 0) {
+				a[k] = 1;
+				length = n+1;
+			} else {
+				length = n;
+			}
+			return this;
+		}
+		int cmp = compare(limbs, length, b, bLen);
+		if (cmp == 0) {
+			length = 0;
+			negative = false;
+			return this;
+		}
+		int[] a = limbs;
+		int borrow = 0;
+		int k = 0;
+		if (cmp > 0) {
+			// |this| - |b|, keeping the sign of this
+			for (; k < bLen; k++) {
+				int diff = a[k] - b[k] - borrow;
+				borrow = diff < 0 ? 1 : 0;
+				a[k] = diff + borrow*Limbs.BASE;
+			}
+			for (; borrow != 0; k++) {
+				int diff = a[k] - 1;
+				borrow = diff < 0 ? 1 : 0;
+				a[k] = diff + borrow*Limbs.BASE;
+			}
+		} else {
+			// |b| - |this|, taking the sign of b
+			ensureCapacity(bLen);
+			a = limbs;
+			for (; k < length; k++) {
+				int diff = b[k] - a[k] - borrow;
+				borrow = diff < 0 ? 1 : 0;
+				a[k] = diff + borrow*Limbs.BASE;
+			}
+			for (; k < bLen; k++) {
+				int diff = b[k] - borrow;
+				borrow = diff < 0 ? 1 : 0;
+				a[k] = diff + borrow*Limbs.BASE;
+			}
+			length = bLen;
+			negative = bNegative;
+		}
+		trim();
+		return this;
+	}
+
+	/**
+	 * Multiplies this integer by a factor, in place.
+	 *
+	 * @param factor Factor, which may be negative
+	 * @return This integer
+	 */
+	public MutableBigInteger multiply(int factor) {
+		if (factor == 0 || length == 0) {
+			length = 0;
+			negative = false;
+			return this;
+		}
+		long f = Math.abs((long) factor);
+		// the carry stays below f, at most two limbs
+		ensureCapacity(length+2);
+		int[] a = limbs;
+		long carry = 0;
+		for (int k = 0; k < length; k++) {
+			long t = a[k]*f + carry;
+			carry = t / Limbs.BASE;
+			a[k] = (int) (t - carry*Limbs.BASE);
+		}
+		while (carry != 0) {
+			a[length++] = (int) (carry % Limbs.BASE);
+			carry /= Limbs.BASE;
+		}
+		negative ^= factor < 0;
+		return this;
+	}
+
+	/**
+	 * Adds first * second to this integer (multiply-accumulate). Below the
+	 * Karatsuba threshold this allocates nothing once the buffers have grown.
+	 *
+	 * @param first First factor
+	 * @param second Second factor
+	 * @return This integer
+	 */
+	public MutableBigInteger multiplyAdd(PackedBigInteger first, PackedBigInteger second) {
+		return multiplyAdd(first.limbs, first.limbs.length, second.limbs, second.limbs.length,
+				first.negative != second.negative);
+	}
+
+	/**
+	 * Adds first * second to this integer (multiply-accumulate). Either factor
+	 * may be this integer itself. Below the Karatsuba threshold this allocates
+	 * nothing once the buffers have grown.
+	 *
+	 * @param first First factor
+	 * @param second Second factor
+	 * @return This integer
+	 */
+	public MutableBigInteger multiplyAdd(MutableBigInteger first, MutableBigInteger second) {
+		return multiplyAdd(first.limbs, first.length, second.limbs, second.length,
+				first.negative != second.negative);
+	}
+
+	private MutableBigInteger multiplyAdd(int[] a, int aLen, int[] b, int bLen, boolean productNegative) {
+		if (aLen == 0 || bLen == 0) {
+			return this;
+		}
+		if (Math.min(aLen, bLen) >= ArithmeticConfig.getKaratsubaThreshold()) {
+			int[] p = Limbs.multiply(prefix(a, aLen), prefix(b, bLen));
+			return add(productNegative, p, p.length);
+		}
+		int n = Math.max(length, aLen+bLen) + 1;
+		if (acc.length < n) {
+			acc = new long[Math.max(n, acc.length + (acc.length >> 1))];
+		}
+		boolean fused = length == 0 || negative == productNegative;
+		boolean aliased = a == limbs || b == limbs;
+		if (fused && !aliased) {
+			// accumulate the product straight onto the current magnitude
+			for (int k = 0; k < length; k++) {
+				acc[k] = limbs[k];
+			}
+			Arrays.fill(acc, length, n, 0);
+			Limbs.schoolbook(a, aLen, b, bLen, acc);
+			ensureCapacity(n);
+			int len = n;
+			while (len > 0 && acc[len-1] == 0) {
+				len--;
+			}
+			for (int k = 0; k < len; k++) {
+				limbs[k] = (int) acc[k];
+			}
+			length = len;
+			negative = productNegative;
+			return this;
+		}
+		Arrays.fill(acc, 0, aLen+bLen, 0);
+		Limbs.schoolbook(a, aLen, b, bLen, acc);
+		if (product.length < aLen+bLen) {
+			product = new int[acc.length];
+		}
+		int len = aLen+bLen;
+		while (len > 0 && acc[len-1] == 0) {
+			len--;
+		}
+		for (int k = 0; k < len; k++) {
+			product[k] = (int) acc[k];
+		}
+		return add(productNegative, product, len);
+	}
+
+	/**
+	 * @return -1, 0 or 1 as this integer is negative, zero or positive
+	 */
+	public int signum() {
+		return length == 0 ? 0 : negative ? -1 : 1;
+	}
+
+	/**
+	 * @return Number of decimal digits in this integer, 0 for zero
+	 */
+	public int numDigits() {
+		if (length == 0) {
+			return 0;
+		}
+		return (length-1)*Limbs.DIGITS_PER_LIMB + Limbs.digitCount(limbs[length-1]);
+	}
+
+	/**
+	 * Grows the buffer, if needed, so that values of up to the given number of
+	 * limbs need no further allocation.
+	 *
+	 * @param capacity Number of limbs to make room for
+	 */
+	public void ensureCapacity(int capacity) {
+		if (limbs.length < capacity) {
+			limbs = Arrays.copyOf(limbs, Math.max(capacity, limbs.length + (limbs.length >> 1)));
+		}
+	}
+
+	/**
+	 * @return A new PackedBigInteger with the current value
+	 */
+	public PackedBigInteger toPackedBigInteger() {
+		if (length == 0) {
+			return PackedBigInteger.ZERO;
+		}
+		return new PackedBigInteger(negative, Arrays.copyOf(limbs, length));
+	}
+
+	/**
+	 * @return A new BigInteger with the current value
+	 */
+	public BigInteger toBigInteger() {
+		return toPackedBigInteger().toBigInteger();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return toPackedBigInteger().toString();
+	}
+
+	private void trim() {
+		while (length > 0 && limbs[length-1] == 0) {
+			length--;
+		}
+		if (length == 0) {
+			negative = false;
+		}
+	}
+
+	/**
+	 * Compares the magnitudes a[0, aLen) and b[0, bLen), both trimmed.
+	 */
+	private static int compare(int[] a, int aLen, int[] b, int bLen) {
+		if (aLen != bLen) {
+			return aLen < bLen ? -1 : 1;
+		}
+		for (int i = aLen-1; i >= 0; i--) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns a trimmed array of the first len limbs of a, which is a itself
+	 * if it has exactly that length.
+	 */
+	private static int[] prefix(int[] a, int len) {
+		return a.length == len ? a : Arrays.copyOf(a, len);
+	}
+
+	/**
+	 * Writes the magnitude of value into dst, which has room for 3 limbs, and
+	 * returns its trimmed length.
+	 */
+	private static int toLimbs(long value, int[] dst) {
+		// run on the negative magnitude, which also holds Long.MIN_VALUE
+		long rest = value < 0 ? value : -value;
+		int n = 0;
+		while (rest != 0) {
+			dst[n++] = (int) -(rest % Limbs.BASE);
+			rest /= Limbs.BASE;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,286 @@
+package bigint;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Number-theoretic transform multiplication for very large magnitudes.
+ *
+ * Each base 10^9 limb is split into three base 1000 coefficients, and the
+ * coefficient vectors are convolved modulo two NTT-friendly primes. A single
+ * coefficient of the convolution is at most 999^2 * 2^25, well below the product
+ * of the primes, so the Chinese Remainder Theorem recovers it exactly and no
+ * rounding error is possible (unlike a floating point FFT).
+ *
+ * Both primes support transforms of up to 2^25 points, which covers products of
+ * roughly 100 million decimal digits. Multiplier falls back to Toom-Cook above
+ * that, which splits the operands until the pieces fit again.
+ *
+ * Given a pool, the convolutions for the two primes run side by side, and each
+ * stage of a transform is cut into chunks of butterflies that run as tasks.
+ * The butterflies of one stage touch disjoint elements, so the result does not
+ * depend on how the stage is cut.
+ */
+final class Ntt {
+
+	/**
+	 * 7 * 2^26 + 1
+	 */
+	private static final int P1 = 469762049;
+
+	/**
+	 * 5 * 2^25 + 1
+	 */
+	private static final int P2 = 167772161;
+
+	/**
+	 * Primitive root of both primes
+	 */
+	private static final int G = 3;
+
+	/**
+	 * Inverse of P1 modulo P2, for the CRT step
+	 */
+	private static final long P1_INV_MOD_P2 = pow(P1 % P2, P2-2, P2);
+
+	/**
+	 * Largest transform both primes support
+	 */
+	static final int MAX_LENGTH = 1 << 25;
+
+	/**
+	 * Coefficient radix and the number of coefficients in a limb
+	 */
+	private static final int RADIX = 1000;
+	private static final int PER_LIMB = 3;
+
+	/**
+	 * Fewest butterflies (or pointwise products) worth a task of their own
+	 */
+	private static final int MIN_CHUNK = 1 << 14;
+
+	private Ntt() {
+	}
+
+	/**
+	 * @return True if a product of magnitudes of these lengths fits in one transform
+	 */
+	static boolean fits(int aLen, int bLen) {
+		return (long) PER_LIMB*(aLen+bLen) <= MAX_LENGTH;
+	}
+
+	/**
+	 * Returns a * b with exactly a.length + b.length limbs, untrimmed. The
+	 * caller checks fits() first. Passing the same array twice squares it with
+	 * two transforms per prime instead of three. The work is spread over pool
+	 * unless it is null.
+	 */
+	static int[] multiply(int[] a, int[] b, ForkJoinPool pool) {
+		int n = transformLength(PER_LIMB*(a.length+b.length));
+		int[][] r = new int[2][];
+		if (pool == null) {
+			r[0] = convolve(a, b, n, P1, null);
+			r[1] = convolve(a, b, n, P2, null);
+		} else {
+			Parallel.invokeAll(pool,
+					ForkJoinTask.adapt(() -> r[0] = convolve(a, b, n, P1, pool)),
+					ForkJoinTask.adapt(() -> r[1] = convolve(a, b, n, P2, pool)));
+		}
+		return recombine(r[0], r[1], a.length+b.length);
+	}
+
+	/**
+	 * Cyclic convolution of a and b modulo p. When a and b are the same array
+	 * the product is a square, and a single forward transform serves both.
+	 */
+	private static int[] convolve(int[] a, int[] b, int n, int p, ForkJoinPool pool) {
+		int[] fa = split(a, n);
+		int[] fb = a == b ? fa : split(b, n);
+		int pNeg = negativeInverse(p);
+		transform(fa, p, pNeg, false, pool);
+		if (fb != fa) {
+			transform(fb, p, pNeg, false, pool);
+		}
+		forChunks(n, pool, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				fa[i] = redc((long) fa[i]*fb[i], p, pNeg);
+			}
+		});
+		transform(fa, p, pNeg, true, pool);
+		return fa;
+	}
+
+	/**
+	 * Spreads the limbs of a into base 1000 coefficients, zero padded to n.
+	 */
+	private static int[] split(int[] a, int n) {
+		int[] res = new int[n];
+		for (int i = 0, j = 0; i < a.length; i++) {
+			int limb = a[i];
+			for (int d = 0; d < PER_LIMB; d++) {
+				res[j++] = limb % RADIX;
+				limb /= RADIX;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Recovers each coefficient from its two residues, then propagates carries
+	 * and packs the coefficients back into base 10^9 limbs.
+	 */
+	private static int[] recombine(int[] r1, int[] r2, int len) {
+		int[] res = new int[len];
+		long carry = 0;
+		for (int k = 0, j = 0; k < len; k++) {
+			int limb = 0;
+			int scale = 1;
+			for (int d = 0; d < PER_LIMB; d++, j++) {
+				long x1 = r1[j];
+				long t = (r2[j] - x1 % P2 + P2) % P2 * P1_INV_MOD_P2 % P2;
+				long v = x1 + P1*t + carry;
+				carry = v / RADIX;
+				limb += (int) (v - carry*RADIX) * scale;
+				scale *= RADIX;
+			}
+			res[k] = limb;
+		}
+		return res;
+	}
+
+	/**
+	 * In-place iterative Cooley-Tukey transform modulo p. The twiddle factors are
+	 * kept in Montgomery form, so multiplying by one costs a single reduction
+	 * and leaves the other operand in the ordinary domain. The inverse transform
+	 * also scales by 1/n and undoes the factor R^-1 of the pointwise products.
+	 */
+	private static void transform(int[] a, int p, int pNeg, boolean invert, ForkJoinPool pool) {
+		int n = a.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				int t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		}
+		long r = (1L << 32) % p;
+		int[] w = new int[Math.max(1, n >> 1)];
+		for (int len = 2; len <= n; len <<= 1) {
+			long wlen = pow(G, (p-1)/len, p);
+			if (invert) {
+				wlen = pow(wlen, p-2, p);
+			}
+			int wlenMont = (int) (wlen*r % p);
+			int half = len >> 1;
+			w[0] = (int) r;
+			for (int j = 1; j < half; j++) {
+				w[j] = redc((long) w[j-1]*wlenMont, p, pNeg);
+			}
+			int stageLen = len;
+			forChunks(n >> 1, pool, (from, to) -> butterflies(a, w, stageLen, from, to, p, pNeg));
+		}
+		if (invert) {
+			// (1/n) * R^2, so that redc leaves a factor of R/n
+			int scale = (int) (pow(n, p-2, p)*r % p*r % p);
+			forChunks(n, pool, (from, to) -> {
+				for (int i = from; i < to; i++) {
+					a[i] = redc((long) a[i]*scale, p, pNeg);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs butterflies [from, to) of the stage with blocks of len elements,
+	 * numbering the butterflies of each block 0 to len/2 - 1.
+	 */
+	private static void butterflies(int[] a, int[] w, int len, int from, int to, int p, int pNeg) {
+		int half = len >> 1;
+		int i = from / half * len;
+		int j = from % half;
+		for (int t = from; t < to; i += len, j = 0) {
+			int end = Math.min(half, j + to-t);
+			t += end-j;
+			for (; j < end; j++) {
+				int u = a[i+j];
+				int v = redc((long) a[i+j+half]*w[j], p, pNeg);
+				int sum = u + v;
+				a[i+j] = sum >= p ? sum - p : sum;
+				int diff = u - v;
+				a[i+j+half] = diff < 0 ? diff + p : diff;
+			}
+		}
+	}
+
+	/**
+	 * A loop body over an index range
+	 */
+	private interface Range {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Runs body over [0, n), on the calling thread if pool is null or n is
+	 * small, otherwise in chunks of at least MIN_CHUNK spread over the pool.
+	 */
+	private static void forChunks(int n, ForkJoinPool pool, Range body) {
+		if (pool == null || n < 2*MIN_CHUNK) {
+			body.run(0, n);
+			return;
+		}
+		int chunks = Math.min(n / MIN_CHUNK, 4*pool.getParallelism());
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks];
+		for (int c = 0; c < chunks; c++) {
+			int from = (int) ((long) n*c / chunks);
+			int to = (int) ((long) n*(c+1) / chunks);
+			tasks[c] = ForkJoinTask.adapt(() -> body.run(from, to));
+		}
+		Parallel.invokeAll(pool, tasks);
+	}
+
+	/**
+	 * Montgomery reduction with R = 2^32: returns t * R^-1 mod p for t < p * 2^32.
+	 */
+	private static int redc(long t, int p, int pNeg) {
+		int m = (int) t * pNeg;
+		long u = (t + (m & 0xFFFFFFFFL)*p) >>> 32;
+		return (int) (u >= p ? u - p : u);
+	}
+
+	/**
+	 * Returns -p^-1 mod 2^32, by Newton iteration on the odd modulus p.
+	 */
+	private static int negativeInverse(int p) {
+		int inv = p;
+		for (int i = 0; i < 5; i++) {
+			inv *= 2 - p*inv;
+		}
+		return -inv;
+	}
+
+	private static int transformLength(int coefficients) {
+		int n = 1;
+		while (n < coefficients) {
+			n <<= 1;
+		}
+		return n;
+	}
+
+	private static long pow(long base, long exp, long mod) {
+		long res = 1;
+		base %= mod;
+		while (exp > 0) {
+			if ((exp & 1) != 0) {
+				res = res*base % mod;
+			}
+			base = base*base % mod;
+			exp >>= 1;
+		}
+		return res;
+	}
+}
@@ -0,0 +1,333 @@
+package bigint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded memo of products and powers, for callers that compute the same
+ * ones over and over, such as powers of ten or fixed factorial prefixes.
+ *
+ * Entries are keyed by operand value (equals and hashCode of
+ * PackedBigInteger), not identity, so an operand parsed afresh on every call
+ * still hits. Products are keyed without regard to operand order.
+ *
+ * The cache is bounded by size rather than entry count: each entry weighs the
+ * limbs of its operands plus the limbs of its result, and the least recently
+ * used entries are evicted once the total exceeds the budget. An entry that
+ * weighs more than the budget of its stripe is computed but never stored.
+ *
+ * All methods are thread-safe, so one cache can be shared by every thread of
+ * a server. The entries are spread over independently locked stripes, and a
+ * missing result is computed outside any lock: two threads that miss on the
+ * same key at once both compute it, and the later one replaces the earlier
+ * one's entry with an equal value.
+ *
+ * The cache is an opt-in layer over PackedBigInteger and BigInteger; their
+ * static methods never consult it.
+ */
+public final class OperationCache {
+
+	private static final int DEFAULT_STRIPES = 16;
+
+	/**
+	 * Operation tags, part of every key
+	 */
+	private static final int MULTIPLY = 1;
+	private static final int POW = 2;
+
+	private final Stripe[] stripes;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Creates a cache holding at most maxLimbs limbs of operands and results,
+	 * over DEFAULT_STRIPES stripes.
+	 *
+	 * @param maxLimbs Size budget, in base 10^9 limbs
+	 * @throws IllegalArgumentException If the budget is not positive
+	 */
+	public OperationCache(long maxLimbs) {
+		this(maxLimbs, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates a cache holding at most maxLimbs limbs of operands and results.
+	 * Each stripe gets an equal share of the budget; more stripes mean less
+	 * lock contention but a coarser LRU order.
+	 *
+	 * @param maxLimbs Size budget, in base 10^9 limbs
+	 * @param stripes Number of stripes, rounded up to a power of two
+	 * @throws IllegalArgumentException If the budget or the stripe count is not positive
+	 */
+	public OperationCache(long maxLimbs, int stripes) {
+		if (maxLimbs <= 0) {
+			throw new IllegalArgumentException("Cache budget not positive: " + maxLimbs);
+		}
+		if (stripes <= 0 || stripes > 1 << 16) {
+			throw new IllegalArgumentException("Stripe count out of range: " + stripes);
+		}
+		int n = Integer.highestOneBit(stripes);
+		if (n < stripes) {
+			n <<= 1;
+		}
+		this.stripes = new Stripe[n];
+		long budget = Math.max(1, maxLimbs / n);
+		for (int i = 0; i < n; i++) {
+			this.stripes[i] = new Stripe(budget);
+		}
+	}
+
+	/**
+	 * Returns first * second, from the cache if this product (or second * first)
+	 * was computed before.
+	 *
+	 * @param first First operand
+	 * @param second Second operand
+	 * @return The product, equal to PackedBigInteger.multiply(first, second)
+	 */
+	public PackedBigInteger multiply(PackedBigInteger first, PackedBigInteger second) {
+		Key key = new Key(MULTIPLY, first, second, 0);
+		PackedBigInteger res = lookup(key);
+		if (res == null) {
+			res = PackedBigInteger.multiply(first, second);
+			store(key, res);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns base raised to the given power, from the cache if it was
+	 * computed before.
+	 *
+	 * @param base Big integer to raise
+	 * @param exponent Power, which must not be negative
+	 * @return The power, equal to PackedBigInteger.pow(base, exponent)
+	 * @throws ArithmeticException If the exponent is negative
+	 */
+	public PackedBigInteger pow(PackedBigInteger base, int exponent) {
+		if (exponent < 0) {
+			throw new ArithmeticException("Negative exponent");
+		}
+		Key key = new Key(POW, base, null, exponent);
+		PackedBigInteger res = lookup(key);
+		if (res == null) {
+			res = PackedBigInteger.pow(base, exponent);
+			store(key, res);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns first * second through the cache. BigInteger is mutable, so the
+	 * operands are packed into the key, and every call returns a new
+	 * BigInteger that the caller is free to modify.
+	 *
+	 * @param first First operand, which is not modified
+	 * @param second Second operand, which is not modified
+	 * @return A new BigInteger which is the product
+	 */
+	public BigInteger multiply(BigInteger first, BigInteger second) {
+		return multiply(PackedBigInteger.from(first), PackedBigInteger.from(second)).toBigInteger();
+	}
+
+	/**
+	 * Returns base^exponent through the cache, as a new BigInteger.
+	 *
+	 * @param base Big integer to raise, which is not modified
+	 * @param exponent Power, which must not be negative
+	 * @return A new BigInteger which is the power
+	 * @throws ArithmeticException If the exponent is negative
+	 */
+	public BigInteger pow(BigInteger base, int exponent) {
+		return pow(PackedBigInteger.from(base), exponent).toBigInteger();
+	}
+
+	/**
+	 * @return Number of calls answered from the cache
+	 */
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return Number of calls that had to compute their result
+	 */
+	public long missCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return Number of entries evicted to stay within the budget
+	 */
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return Fraction of calls answered from the cache, 0 before the first call
+	 */
+	public double hitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * @return Number of cached entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return Limbs currently held by the cached entries
+	 */
+	public long weight() {
+		long weight = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				weight += stripe.weight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Drops every entry. The statistics are kept.
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.map.clear();
+				stripe.weight = 0;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "OperationCache[entries=" + size() + ", limbs=" + weight()
+				+ ", hits=" + hitCount() + ", misses=" + missCount()
+				+ ", evictions=" + evictionCount() + "]";
+	}
+
+	private Stripe stripe(Key key) {
+		int h = key.hash;
+		h ^= h >>> 16;
+		return stripes[h & (stripes.length-1)];
+	}
+
+	private PackedBigInteger lookup(Key key) {
+		Stripe stripe = stripe(key);
+		PackedBigInteger res;
+		synchronized (stripe) {
+			res = stripe.map.get(key);
+		}
+		if (res == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return res;
+	}
+
+	private void store(Key key, PackedBigInteger result) {
+		long w = key.weight() + result.limbs.length;
+		Stripe stripe = stripe(key);
+		if (w > stripe.budget) {
+			return;
+		}
+		int evicted = 0;
+		synchronized (stripe) {
+			PackedBigInteger old = stripe.map.put(key, result);
+			if (old != null) {
+				stripe.weight -= key.weight() + old.limbs.length;
+			}
+			stripe.weight += w;
+			// the map is in access order, so the eldest entry is the least recently used
+			Iterator<Map.Entry<Key, PackedBigInteger>> it = stripe.map.entrySet().iterator();
+			while (stripe.weight > stripe.budget) {
+				Map.Entry<Key, PackedBigInteger> eldest = it.next();
+				stripe.weight -= eldest.getKey().weight() + eldest.getValue().limbs.length;
+				it.remove();
+				evicted++;
+			}
+		}
+		if (evicted != 0) {
+			evictions.add(evicted);
+		}
+	}
+
+	/**
+	 * One independently locked part of the cache. All fields are guarded by
+	 * the stripe's monitor.
+	 */
+	private static final class Stripe {
+		final long budget;
+		final LinkedHashMap<Key, PackedBigInteger> map = new LinkedHashMap<>(16, 0.75f, true);
+		long weight;
+
+		Stripe(long budget) {
+			this.budget = budget;
+		}
+	}
+
+	/**
+	 * An operation and its operands. For a product the operands are
+	 * unordered: the hash is symmetric, and equals accepts them swapped.
+	 */
+	private static final class Key {
+		final int op;
+		final PackedBigInteger a;
+		final PackedBigInteger b;
+		final int exponent;
+		final int hash;
+
+		Key(int op, PackedBigInteger a, PackedBigInteger b, int exponent) {
+			this.op = op;
+			this.a = a;
+			this.b = b;
+			this.exponent = exponent;
+			int h = a.hashCode();
+			if (b != null) {
+				h += b.hashCode();
+			}
+			this.hash = (31*h + exponent)*31 + op;
+		}
+
+		long weight() {
+			return a.limbs.length + (b == null ? 0 : b.limbs.length);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			if (op != other.op || exponent != other.exponent || hash != other.hash) {
+				return false;
+			}
+			if (b == null) {
+				return other.b == null && a.equals(other.a);
+			}
+			return a.equals(other.a) && b.equals(other.b)
+					|| a.equals(other.b) && b.equals(other.a);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
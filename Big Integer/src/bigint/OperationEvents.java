@@ -0,0 +1,116 @@
+package bigint;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventFactory;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import jdk.jfr.ValueDescriptor;
+
+/**
+ * The Flight Recorder event bigint.Operation, one per operation recorded by
+ * Metrics. Metrics only loads this class when the jdk.jfr module is present.
+ *
+ * The event type is built at run time with EventFactory rather than declared
+ * as a subclass of jdk.jfr.Event: against the JDK 12 API, which the project
+ * compiles with (javac --release 12), Event's superclass is not visible, so
+ * neither a subclass nor a direct call to one of its methods compiles. The
+ * methods are called through method handles instead.
+ */
+final class OperationEvents {
+
+	/**
+	 * Field indexes, in the order of the descriptors
+	 */
+	private static final int OPERATION = 0;
+	private static final int DIGITS = 1;
+	private static final int NANOS = 2;
+	private static final int ALLOCATED_BYTES = 3;
+
+	private static final EventFactory FACTORY;
+	private static final MethodHandle IS_ENABLED;
+	private static final MethodHandle SET;
+	private static final MethodHandle COMMIT;
+
+	static {
+		EventFactory factory = null;
+		MethodHandle isEnabled = null;
+		MethodHandle set = null;
+		MethodHandle commit = null;
+		try {
+			factory = EventFactory.create(List.of(
+					new AnnotationElement(Name.class, "bigint.Operation"),
+					new AnnotationElement(Label.class, "Big Integer Operation"),
+					new AnnotationElement(Category.class, new String[] {"Big Integer"}),
+					new AnnotationElement(Description.class, "A parse, add, multiply or toString of a big integer")),
+					List.of(
+					new ValueDescriptor(String.class, "operation", List.of(
+							new AnnotationElement(Label.class, "Operation"))),
+					new ValueDescriptor(long.class, "digits", List.of(
+							new AnnotationElement(Label.class, "Digits"),
+							new AnnotationElement(Description.class, "Operand size in decimal digits"))),
+					new ValueDescriptor(long.class, "nanos", List.of(
+							new AnnotationElement(Label.class, "Time"),
+							new AnnotationElement(Timespan.class, Timespan.NANOSECONDS))),
+					new ValueDescriptor(long.class, "allocatedBytes", List.of(
+							new AnnotationElement(Label.class, "Allocated"),
+							new AnnotationElement(Description.class,
+									"Bytes allocated, if -Dbigint.metrics.allocations=true")))));
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			isEnabled = lookup.findVirtual(Event.class, "isEnabled", MethodType.methodType(boolean.class))
+					.asType(MethodType.methodType(boolean.class, Object.class));
+			set = lookup.findVirtual(Event.class, "set", MethodType.methodType(void.class, int.class, Object.class))
+					.asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+			commit = lookup.findVirtual(Event.class, "commit", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Flight Recorder is unusable here; recording goes on without events
+			factory = null;
+		}
+		FACTORY = factory;
+		IS_ENABLED = isEnabled;
+		SET = set;
+		COMMIT = commit;
+	}
+
+	private OperationEvents() {
+	}
+
+	/**
+	 * Offers one operation to Flight Recorder, which costs an allocation and
+	 * a check unless a recording enables the event.
+	 *
+	 * @param operation Name of the operation or tier
+	 * @param digits Operand size in decimal digits
+	 * @param nanos Time taken
+	 * @param allocatedBytes Bytes allocated, or 0 if not measured
+	 */
+	static void emit(String operation, long digits, long nanos, long allocatedBytes) {
+		if (FACTORY == null) {
+			return;
+		}
+		Object event = FACTORY.newEvent();
+		try {
+			if ((boolean) IS_ENABLED.invokeExact(event)) {
+				SET.invokeExact(event, OPERATION, (Object) operation);
+				SET.invokeExact(event, DIGITS, (Object) digits);
+				SET.invokeExact(event, NANOS, (Object) nanos);
+				SET.invokeExact(event, ALLOCATED_BYTES, (Object) allocatedBytes);
+				COMMIT.invokeExact(event);
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// none of the methods declares a checked exception
+			throw new IllegalStateException(e);
+		}
+	}
+}
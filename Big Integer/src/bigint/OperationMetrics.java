@@ -0,0 +1,115 @@
+package bigint;
+
+/**
+ * The counters of one operation at the moment of a snapshot, see
+ * ArithmeticConfig.getMetrics().
+ *
+ * Besides totals, the calls are broken down into a histogram by operand size
+ * in decimal digits (the larger operand's, or the string's length for a
+ * parse): bucket 0 holds operands of no digits, and bucket i > 0 those of
+ * 2^(i-1) to 2^i - 1 digits, with the last bucket open ended.
+ *
+ * The counters are read one by one while other threads may be updating them,
+ * so a snapshot taken under load can be slightly inconsistent, e.g. the
+ * buckets may not add up to the count exactly.
+ */
+public final class OperationMetrics {
+
+	private final String name;
+	private final long count;
+	private final long totalNanos;
+	private final long allocatedBytes;
+	private final long[] bucketCounts;
+	private final long[] bucketNanos;
+
+	OperationMetrics(String name, long count, long totalNanos, long allocatedBytes,
+			long[] bucketCounts, long[] bucketNanos) {
+		this.name = name;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.bucketCounts = bucketCounts;
+		this.bucketNanos = bucketNanos;
+	}
+
+	/**
+	 * @return Name of the operation, e.g. "packed.multiply", or "tier.karatsuba"
+	 *         for the packed products and squares that went to that tier
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Number of completed calls. Calls that threw are not counted.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Total time spent in the calls, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return Mean time per call in nanoseconds, 0 before the first call
+	 */
+	public double getMeanNanos() {
+		return count == 0 ? 0 : (double) totalNanos / count;
+	}
+
+	/**
+	 * @return Total bytes allocated by the calls, or 0 unless the JVM was
+	 *         started with -Dbigint.metrics.allocations=true
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return Number of calls in each operand size bucket, as a new array
+	 */
+	public long[] getBucketCounts() {
+		return bucketCounts.clone();
+	}
+
+	/**
+	 * @return Nanoseconds spent in each operand size bucket, as a new array
+	 */
+	public long[] getBucketNanos() {
+		return bucketNanos.clone();
+	}
+
+	/**
+	 * @param bucket Bucket index
+	 * @return Smallest operand size, in digits, that falls into the bucket
+	 * @throws IndexOutOfBoundsException If there is no such bucket
+	 */
+	public static long bucketFloor(int bucket) {
+		if (bucket < 0 || bucket >= Metrics.BUCKETS) {
+			throw new IndexOutOfBoundsException("Bucket " + bucket + " out of range");
+		}
+		return bucket == 0 ? 0 : 1L << (bucket-1);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name).append("[count=").append(count)
+				.append(", nanos=").append(totalNanos);
+		if (allocatedBytes != 0) {
+			sb.append(", bytes=").append(allocatedBytes);
+		}
+		for (int i = 0; i < bucketCounts.length; i++) {
+			if (bucketCounts[i] != 0) {
+				sb.append(", ").append(bucketFloor(i)).append("+ digits: ").append(bucketCounts[i])
+						.append(" in ").append(bucketNanos[i]).append("ns");
+			}
+		}
+		return sb.append(']').toString();
+	}
+}
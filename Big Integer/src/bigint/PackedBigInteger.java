@@ -0,0 +1,1199 @@
+package bigint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class encapsulates a big integer stored as a contiguous array of base 10^9
+ * limbs instead of a linked list of single digits. It offers the same parse, add,
+ * multiply and toString API as BigInteger, at a fraction of the memory: nine digits
+ * share one int, where BigInteger spends a whole DigitNode object on each digit.
+ *
+ * Values convert to and from BigInteger in linear time, see from(BigInteger) and
+ * toBigInteger().
+ *
+ * Besides decimal text, values can be stored in a compact binary form that is
+ * written and read in linear time, see writeBinary and readBinary. It is one
+ * big-endian int holding the limb count, negated for a negative value, followed
+ * by the limbs as big-endian ints, least significant first. Zero is the single
+ * int 0.
+ *
+ * Instances are immutable: every field is final and no method writes to a limb
+ * array once the instance holding it is constructed. Values can therefore be
+ * shared between threads without synchronization, and kept as keys or in
+ * caches. Operations that do not change the magnitude, such as negate and
+ * abs, return an instance sharing the operand's limb array.
+ */
+public final class PackedBigInteger {
+
+	/**
+	 * Number of limbs formatted between two writes in writeTo
+	 */
+	private static final int WRITE_CHUNK_LIMBS = 1024;
+
+	/**
+	 * 10^i for every i below DIGITS_PER_LIMB
+	 */
+	static final int[] POWERS_OF_TEN =
+		{1, 10, 100, 1000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+
+	/**
+	 * Size of the buffer writeBinary and readBinary move through a channel
+	 */
+	private static final int CHANNEL_CHUNK_BYTES = 1 << 16;
+
+	/**
+	 * Canonical instances of the values -limit to limit, at index value + limit,
+	 * where limit is ArithmeticConfig.getValueCacheLimit()
+	 */
+	private static final PackedBigInteger[] CACHE = buildCache(ArithmeticConfig.getValueCacheLimit());
+
+	/**
+	 * The canonical zero
+	 */
+	public static final PackedBigInteger ZERO = CACHE[CACHE.length / 2];
+
+	/**
+	 * True if this is a negative integer
+	 */
+	final boolean negative;
+
+	/**
+	 * Number of digits in this integer
+	 */
+	final int numDigits;
+
+	/**
+	 * Magnitude of this integer, in base 10^9 limbs.
+	 * NOTE: As with the BigInteger linked list, the Least Significant limb is
+	 * stored FIRST. Zero limbs at the most significant end are not stored, so
+	 * the integer 0 is the empty array.
+	 *
+	 * The array may be shared with other instances, and must never be written.
+	 */
+	final int[] limbs;
+
+	/**
+	 * Cached hash code, 0 until first computed. Racing threads can only ever
+	 * store the same value, as with String.
+	 */
+	private int hash;
+
+	/**
+	 * Initializes this integer to a positive number with zero digits, in other
+	 * words this is the 0 (zero) valued integer.
+	 */
+	public PackedBigInteger() {
+		negative = false;
+		numDigits = 0;
+		limbs = Limbs.ZERO;
+	}
+
+	/**
+	 * Builds an integer around an already trimmed magnitude, which the new
+	 * instance takes over; the caller must not write to it afterwards.
+	 */
+	PackedBigInteger(boolean negative, int[] limbs) {
+		this.limbs = limbs;
+		this.negative = negative && limbs.length != 0;
+		this.numDigits = Limbs.numDigits(limbs);
+	}
+
+	private static PackedBigInteger[] buildCache(int limit) {
+		PackedBigInteger[] cache = new PackedBigInteger[2*limit+1];
+		for (int i = 0; i < cache.length; i++) {
+			int value = i - limit;
+			cache[i] = new PackedBigInteger(value < 0,
+					value == 0 ? Limbs.ZERO : new int[] {Math.abs(value)});
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns a PackedBigInteger with the given value. Values within
+	 * ArithmeticConfig.getValueCacheLimit() of zero (-1024 to 1024 by default)
+	 * come from a cache of canonical instances built at startup, so asking for
+	 * them allocates nothing.
+	 *
+	 * @param value Value of the integer
+	 * @return PackedBigInteger with the given value
+	 */
+	public static PackedBigInteger valueOf(long value) {
+		int limit = CACHE.length / 2;
+		if (value >= -limit && value <= limit) {
+			return CACHE[(int) value + limit];
+		}
+		// run on the negative magnitude, which also holds Long.MIN_VALUE
+		long rest = value < 0 ? value : -value;
+		int[] limbs = new int[3];
+		int k = 0;
+		while (rest != 0) {
+			limbs[k++] = (int) -(rest % Limbs.BASE);
+			rest /= Limbs.BASE;
+		}
+		return new PackedBigInteger(value < 0, Limbs.trim(limbs));
+	}
+
+	/**
+	 * Returns the canonical instance for a magnitude of at most one limb if
+	 * there is one, and otherwise a new instance around the magnitude.
+	 */
+	static PackedBigInteger canonical(boolean negative, int[] limbs) {
+		int limit = CACHE.length / 2;
+		if (limbs.length == 0) {
+			return ZERO;
+		}
+		if (limbs.length == 1 && limbs[0] <= limit) {
+			return CACHE[(negative ? -limbs[0] : limbs[0]) + limit];
+		}
+		return new PackedBigInteger(negative, limbs);
+	}
+
+	/**
+	 * Parses an input integer string into a corresponding PackedBigInteger instance.
+	 * The accepted format is the same as BigInteger.parse: an optional sign
+	 * followed by at least one digit, with leading and trailing spaces ignored.
+	 *
+	 * The characters are read in place, without a trimmed copy, and nine digits
+	 * at a time go straight into one limb. Since a limb is a power of ten, no
+	 * radix conversion is needed and the parse is a single linear pass.
+	 *
+	 * @param integer Integer string that is to be parsed
+	 * @return PackedBigInteger instance that stores the input integer.
+	 * @throws IllegalArgumentException If input is incorrectly formatted
+	 */
+	public static PackedBigInteger parse(CharSequence integer)
+			throws IllegalArgumentException {
+		if (!Metrics.ENABLED) {
+			return parseUnmetered(integer);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		PackedBigInteger res = parseUnmetered(integer);
+		Metrics.record(Metrics.PACKED_PARSE, Metrics.NONE, integer.length(), start, bytes);
+		return res;
+	}
+
+	private static PackedBigInteger parseUnmetered(CharSequence integer) {
+		int start = 0;
+		int end = integer.length();
+		// ignore spaces around the integer, as String.trim would
+		while (start < end && integer.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && integer.charAt(end-1) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
+		boolean negative = false;
+		char sign = integer.charAt(start);
+		if (sign == '-' || sign == '+') {
+			negative = sign == '-';
+			start++;
+			if (start == end) {
+				throw new IllegalArgumentException("Incorrect format");
+			}
+		}
+		// skip zeros in front
+		while (start < end-1 && integer.charAt(start) == '0') {
+			start++;
+		}
+
+		// fill limbs from the least significant end, nine digits at a time
+		int[] limbs = new int[limbCount(end-start)];
+		int k = 0;
+		for (int hi = end; hi > start; hi -= Limbs.DIGITS_PER_LIMB) {
+			int limb = 0;
+			for (int i = Math.max(start, hi-Limbs.DIGITS_PER_LIMB); i < hi; i++) {
+				int digit = integer.charAt(i) - '0';
+				if (digit < 0 || digit > 9) {
+					throw new IllegalArgumentException("Incorrect format");
+				}
+				limb = limb*10 + digit;
+			}
+			limbs[k++] = limb;
+		}
+		return canonical(negative, Limbs.trim(limbs));
+	}
+
+	/**
+	 * Parses an integer written as ASCII bytes, in the same format as
+	 * parse(CharSequence). The array is read in place.
+	 *
+	 * @param integer ASCII bytes of the integer
+	 * @return PackedBigInteger instance that stores the input integer.
+	 * @throws IllegalArgumentException If input is incorrectly formatted
+	 */
+	public static PackedBigInteger parse(byte[] integer)
+			throws IllegalArgumentException {
+		return parse(ByteBuffer.wrap(integer));
+	}
+
+	/**
+	 * Parses an integer written as ASCII bytes between the buffer's position and
+	 * limit, in the same format as parse(CharSequence). The bytes are read in
+	 * place with absolute gets, so the buffer's position is left untouched and
+	 * direct or memory-mapped buffers are never copied onto the heap.
+	 *
+	 * @param integer Buffer holding the ASCII bytes of the integer
+	 * @return PackedBigInteger instance that stores the input integer.
+	 * @throws IllegalArgumentException If input is incorrectly formatted
+	 */
+	public static PackedBigInteger parse(ByteBuffer integer)
+			throws IllegalArgumentException {
+		if (!Metrics.ENABLED) {
+			return parseUnmetered(integer);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		PackedBigInteger res = parseUnmetered(integer);
+		Metrics.record(Metrics.PACKED_PARSE, Metrics.NONE, integer.remaining(), start, bytes);
+		return res;
+	}
+
+	private static PackedBigInteger parseUnmetered(ByteBuffer integer) {
+		int start = integer.position();
+		int end = integer.limit();
+		while (start < end && integer.get(start) <= ' ' && integer.get(start) >= 0) {
+			start++;
+		}
+		while (end > start && integer.get(end-1) <= ' ' && integer.get(end-1) >= 0) {
+			end--;
+		}
+		if (start == end) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
+		boolean negative = false;
+		byte sign = integer.get(start);
+		if (sign == '-' || sign == '+') {
+			negative = sign == '-';
+			start++;
+			if (start == end) {
+				throw new IllegalArgumentException("Incorrect format");
+			}
+		}
+		while (start < end-1 && integer.get(start) == '0') {
+			start++;
+		}
+
+		int[] limbs = new int[limbCount(end-start)];
+		int k = 0;
+		for (int hi = end; hi > start; hi -= Limbs.DIGITS_PER_LIMB) {
+			int limb = 0;
+			for (int i = Math.max(start, hi-Limbs.DIGITS_PER_LIMB); i < hi; i++) {
+				int digit = integer.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					throw new IllegalArgumentException("Incorrect format");
+				}
+				limb = limb*10 + digit;
+			}
+			limbs[k++] = limb;
+		}
+		return canonical(negative, Limbs.trim(limbs));
+	}
+
+	/**
+	 * Parses an integer written in the given radix, in the same format as
+	 * parse(CharSequence): an optional sign followed by at least one digit,
+	 * with leading and trailing spaces ignored. Digits above 9 are the letters
+	 * a to z, in either case, so "-ff" in radix 16 is -255.
+	 *
+	 * A radix that is a power of two is read by slicing the bits of each
+	 * digit into words in one linear pass. Every radix but 10 is then converted
+	 * to limbs by divide and conquer, multiplying halves of the digits by
+	 * powers of the radix, which takes subquadratic time.
+	 *
+	 * @param integer Integer string that is to be parsed
+	 * @param radix Radix, from Character.MIN_RADIX to Character.MAX_RADIX
+	 * @return PackedBigInteger instance that stores the input integer.
+	 * @throws IllegalArgumentException If input is incorrectly formatted, or the radix is out of range
+	 */
+	public static PackedBigInteger parse(CharSequence integer, int radix)
+			throws IllegalArgumentException {
+		Radix.checkRadix(radix);
+		if (radix == 10) {
+			return parse(integer);
+		}
+		int start = 0;
+		int end = integer.length();
+		while (start < end && integer.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && integer.charAt(end-1) <= ' ') {
+			end--;
+		}
+		boolean negative = false;
+		if (start < end && (integer.charAt(start) == '-' || integer.charAt(start) == '+')) {
+			negative = integer.charAt(start) == '-';
+			start++;
+		}
+		return canonical(negative, Radix.parse(integer, start, end, radix));
+	}
+
+	/**
+	 * Number of limbs needed for the given number of decimal digits
+	 */
+	private static int limbCount(int digits) {
+		return (digits + Limbs.DIGITS_PER_LIMB-1) / Limbs.DIGITS_PER_LIMB;
+	}
+
+	/**
+	 * Adds the first and second big integers, and returns the result in a NEW
+	 * PackedBigInteger object. DOES NOT MODIFY the input big integers.
+	 *
+	 * NOTE that either or both of the input big integers could be negative.
+	 * (Which means this method can effectively subtract as well.)
+	 *
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @return Result big integer
+	 */
+	public static PackedBigInteger add(PackedBigInteger first, PackedBigInteger second) {
+		if (!Metrics.ENABLED) {
+			return addUnmetered(first, second);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		PackedBigInteger res = addUnmetered(first, second);
+		Metrics.record(Metrics.PACKED_ADD, Metrics.NONE,
+				Math.max(first.numDigits, second.numDigits), start, bytes);
+		return res;
+	}
+
+	private static PackedBigInteger addUnmetered(PackedBigInteger first, PackedBigInteger second) {
+		if (first.negative == second.negative) {
+			return new PackedBigInteger(first.negative, Limbs.add(first.limbs, second.limbs));
+		}
+		int cmp = Limbs.compare(first.limbs, second.limbs);
+		if (cmp == 0) {
+			return ZERO;
+		}
+		if (cmp > 0) {
+			return new PackedBigInteger(first.negative, Limbs.subtract(first.limbs, second.limbs));
+		}
+		return new PackedBigInteger(second.negative, Limbs.subtract(second.limbs, first.limbs));
+	}
+
+	/**
+	 * Returns the PackedBigInteger obtained by multiplying the first big integer
+	 * with the second big integer
+	 *
+	 * This method DOES NOT MODIFY either of the input big integers
+	 *
+	 * @param first First big integer
+	 * @param second Second big integer
+	 * @return A new PackedBigInteger which is the product of the first and second big integers
+	 */
+	public static PackedBigInteger multiply(PackedBigInteger first, PackedBigInteger second) {
+		if (!Metrics.ENABLED) {
+			return multiplyUnmetered(first, second);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		PackedBigInteger res = multiplyUnmetered(first, second);
+		Metrics.record(Metrics.PACKED_MULTIPLY, Multiplier.tier(first.limbs.length, second.limbs.length),
+				Math.max(first.numDigits, second.numDigits), start, bytes);
+		return res;
+	}
+
+	private static PackedBigInteger multiplyUnmetered(PackedBigInteger first, PackedBigInteger second) {
+		if (first.limbs == second.limbs) {
+			// x * x, or x * -x since negate shares the limbs
+			PackedBigInteger square = squareUnmetered(first);
+			return first.negative == second.negative ? square : negate(square);
+		}
+		return new PackedBigInteger(first.negative != second.negative,
+				Limbs.multiply(first.limbs, second.limbs));
+	}
+
+	/**
+	 * Returns the square of a big integer. Every cross product of two limbs is
+	 * computed once and doubled, at each multiplication tier, so this costs
+	 * roughly half to two thirds of multiply(integer, other).
+	 *
+	 * multiply(x, x) is routed here automatically.
+	 *
+	 * @param integer Big integer to square
+	 * @return A new PackedBigInteger which is integer * integer
+	 */
+	public static PackedBigInteger square(PackedBigInteger integer) {
+		if (!Metrics.ENABLED) {
+			return squareUnmetered(integer);
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		PackedBigInteger res = squareUnmetered(integer);
+		Metrics.record(Metrics.PACKED_MULTIPLY, Multiplier.tier(integer.limbs.length, integer.limbs.length),
+				integer.numDigits, start, bytes);
+		return res;
+	}
+
+	private static PackedBigInteger squareUnmetered(PackedBigInteger integer) {
+		return new PackedBigInteger(false, Limbs.square(integer.limbs));
+	}
+
+	/**
+	 * Returns the sum of all the terms, each of which may be negative.
+	 *
+	 * The terms are added column by column into one accumulator that is carried
+	 * once at the end, so the cost is linear in the total size of the terms
+	 * rather than in the number of terms times the size of the sum. With a
+	 * parallel pool set in ArithmeticConfig, large collections are summed in
+	 * parallel ranges.
+	 *
+	 * @param terms Big integers to add, fewer than 2^31 of them
+	 * @return The sum, 0 for no terms
+	 */
+	public static PackedBigInteger sum(Collection<PackedBigInteger> terms) {
+		return Reduction.sum(terms.toArray(new PackedBigInteger[0]));
+	}
+
+	/**
+	 * Returns the product of all the factors, e.g. of 1 to n for n!.
+	 *
+	 * The factors are multiplied along a balanced product tree, whose top
+	 * levels multiply operands of similar size with the fast multiplication
+	 * tiers, where a left to right fold would multiply a huge partial product
+	 * by one small factor at a time. With a parallel pool set in
+	 * ArithmeticConfig, large subtrees are multiplied in parallel.
+	 *
+	 * @param factors Big integers to multiply
+	 * @return The product, 1 for no factors
+	 */
+	public static PackedBigInteger product(Collection<PackedBigInteger> factors) {
+		return Reduction.product(factors.toArray(new PackedBigInteger[0]));
+	}
+
+	/**
+	 * Returns the integer with its sign flipped. The result shares the limbs
+	 * of the operand, so this takes constant time.
+	 *
+	 * @param integer Big integer to negate
+	 * @return PackedBigInteger equal to -integer
+	 */
+	public static PackedBigInteger negate(PackedBigInteger integer) {
+		if (integer.limbs.length == 0) {
+			return integer;
+		}
+		return new PackedBigInteger(!integer.negative, integer.limbs);
+	}
+
+	/**
+	 * Returns the absolute value of the integer: the operand itself if it is
+	 * not negative, otherwise an instance sharing its limbs.
+	 *
+	 * @param integer Big integer
+	 * @return PackedBigInteger equal to |integer|
+	 */
+	public static PackedBigInteger abs(PackedBigInteger integer) {
+		if (!integer.negative) {
+			return integer;
+		}
+		return new PackedBigInteger(false, integer.limbs);
+	}
+
+	/**
+	 * Shifts the decimal digits of the integer, multiplying it by 10^places if
+	 * places is positive, and dividing it by 10^-places, truncated toward zero,
+	 * if places is negative. For instance shifting -1234 by -2 gives -12.
+	 *
+	 * Whole limbs (nine places each) move with a single array copy, and the
+	 * remaining places cost one pass of multiplying or dividing by a power of
+	 * ten below a limb. A shift by 0 returns the operand itself.
+	 *
+	 * @param integer Big integer to shift
+	 * @param places Number of decimal places to shift left, or right if negative
+	 * @return PackedBigInteger equal to integer * 10^places
+	 * @throws ArithmeticException If the result would have too many limbs for an array
+	 */
+	public static PackedBigInteger shiftDecimal(PackedBigInteger integer, int places) {
+		int[] a = integer.limbs;
+		if (places == 0 || a.length == 0) {
+			return integer;
+		}
+		if (places > 0) {
+			int limbShift = places / Limbs.DIGITS_PER_LIMB;
+			int digitShift = places % Limbs.DIGITS_PER_LIMB;
+			if ((long) a.length + limbShift + 1 > Integer.MAX_VALUE - 8) {
+				throw new ArithmeticException("Shift result too large");
+			}
+			int[] res = new int[a.length + limbShift + 1];
+			if (digitShift == 0) {
+				System.arraycopy(a, 0, res, limbShift, a.length);
+			} else {
+				long scale = POWERS_OF_TEN[digitShift];
+				long carry = 0;
+				for (int i = 0; i < a.length; i++) {
+					long t = a[i]*scale + carry;
+					carry = t / Limbs.BASE;
+					res[limbShift+i] = (int) (t - carry*Limbs.BASE);
+				}
+				res[limbShift+a.length] = (int) carry;
+			}
+			return new PackedBigInteger(integer.negative, Limbs.trim(res));
+		}
+
+		// -places cannot overflow as a long
+		long right = -(long) places;
+		if (right >= (long) a.length * Limbs.DIGITS_PER_LIMB) {
+			return ZERO;
+		}
+		int limbShift = (int) (right / Limbs.DIGITS_PER_LIMB);
+		int digitShift = (int) (right % Limbs.DIGITS_PER_LIMB);
+		int[] res = new int[a.length - limbShift];
+		if (digitShift == 0) {
+			System.arraycopy(a, limbShift, res, 0, res.length);
+		} else {
+			int divisor = POWERS_OF_TEN[digitShift];
+			int scale = POWERS_OF_TEN[Limbs.DIGITS_PER_LIMB - digitShift];
+			// each limb takes the low digits of the limb above it as its top digits
+			for (int i = 0; i < res.length; i++) {
+				int hi = limbShift+i+1 < a.length ? a[limbShift+i+1] % divisor : 0;
+				res[i] = a[limbShift+i] / divisor + hi*scale;
+			}
+		}
+		return new PackedBigInteger(integer.negative, Limbs.trim(res));
+	}
+
+	/**
+	 * Multiplies a big integer by a machine word. A factor below 10^9 in size
+	 * takes a single pass with a long carry; larger ones are at most three
+	 * limbs, and take that many schoolbook rows.
+	 *
+	 * @param integer Big integer to multiply
+	 * @param factor Factor, which may be negative
+	 * @return A new PackedBigInteger which is integer * factor
+	 */
+	public static PackedBigInteger multiply(PackedBigInteger integer, long factor) {
+		int[] a = integer.limbs;
+		if (a.length == 0 || factor == 0) {
+			return ZERO;
+		}
+		boolean negative = integer.negative != factor < 0;
+		if (factor <= -Limbs.BASE || factor >= Limbs.BASE) {
+			return new PackedBigInteger(negative, Limbs.multiply(a, valueOf(factor).limbs));
+		}
+		long f = Math.abs(factor);
+		int[] res = new int[a.length+1];
+		long carry = 0;
+		for (int i = 0; i < a.length; i++) {
+			long t = a[i]*f + carry;
+			carry = t / Limbs.BASE;
+			res[i] = (int) (t - carry*Limbs.BASE);
+		}
+		res[a.length] = (int) carry;
+		return new PackedBigInteger(negative, Limbs.trim(res));
+	}
+
+	/**
+	 * Divides a big integer by a machine word in a single pass from the most
+	 * significant limb, truncating toward zero as divide does.
+	 *
+	 * @param integer Dividend
+	 * @param divisor Divisor, which may be negative
+	 * @return A new PackedBigInteger which is the quotient
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static PackedBigInteger divide(PackedBigInteger integer, int divisor) {
+		if (divisor == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		int[] a = integer.limbs;
+		if (a.length == 0) {
+			return ZERO;
+		}
+		long d = Math.abs((long) divisor);
+		int[] q = new int[a.length];
+		long rem = 0;
+		for (int i = a.length-1; i >= 0; i--) {
+			long v = rem*Limbs.BASE + a[i];
+			q[i] = (int) (v / d);
+			rem = v - q[i]*d;
+		}
+		return canonical(integer.negative != divisor < 0, Limbs.trim(q));
+	}
+
+	/**
+	 * Returns the remainder of a big integer divided by a machine word, in a
+	 * single pass and without allocating. As with divMod, the remainder takes
+	 * the sign of the dividend.
+	 *
+	 * @param integer Dividend
+	 * @param divisor Divisor, which may be negative
+	 * @return integer - divide(integer, divisor) * divisor
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static int remainder(PackedBigInteger integer, int divisor) {
+		if (divisor == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		int[] a = integer.limbs;
+		long d = Math.abs((long) divisor);
+		long rem = 0;
+		for (int i = a.length-1; i >= 0; i--) {
+			rem = (rem*Limbs.BASE + a[i]) % d;
+		}
+		return (int) (integer.negative ? -rem : rem);
+	}
+
+	/**
+	 * Returns the quotient of the first big integer divided by the second,
+	 * truncated toward zero. For instance -7 / 2 is -3.
+	 *
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return A new PackedBigInteger which is the quotient
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static PackedBigInteger divide(PackedBigInteger first, PackedBigInteger second) {
+		return divMod(first, second)[0];
+	}
+
+	/**
+	 * Returns first mod second, which unlike the remainder of divMod is never
+	 * negative. For instance -7 mod 2 is 1.
+	 *
+	 * @param first Dividend
+	 * @param second Modulus, which must be positive
+	 * @return A new PackedBigInteger in the range [0, second)
+	 * @throws ArithmeticException If the modulus is not positive
+	 */
+	public static PackedBigInteger mod(PackedBigInteger first, PackedBigInteger second) {
+		checkModulus(second);
+		int[] r = Divider.divide(first.limbs, second.limbs)[1];
+		if (first.negative && r.length != 0) {
+			r = Limbs.subtract(second.limbs, r);
+		}
+		return new PackedBigInteger(false, r);
+	}
+
+	/**
+	 * Divides the first big integer by the second, returning both the quotient
+	 * and the remainder. The quotient is truncated toward zero and the remainder
+	 * takes the sign of the dividend, so first = quotient * second + remainder.
+	 *
+	 * This method DOES NOT MODIFY either of the input big integers
+	 *
+	 * @param first Dividend
+	 * @param second Divisor
+	 * @return Array holding the quotient at index 0 and the remainder at index 1
+	 * @throws ArithmeticException If the divisor is zero
+	 */
+	public static PackedBigInteger[] divMod(PackedBigInteger first, PackedBigInteger second) {
+		if (second.limbs.length == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		int[][] qr = Divider.divide(first.limbs, second.limbs);
+		return new PackedBigInteger[] {
+				new PackedBigInteger(first.negative != second.negative, qr[0]),
+				new PackedBigInteger(first.negative, qr[1])};
+	}
+
+	/**
+	 * Returns base raised to the given power.
+	 *
+	 * @param base Big integer to raise
+	 * @param exponent Power, which must not be negative
+	 * @return A new PackedBigInteger which is base^exponent
+	 * @throws ArithmeticException If the exponent is negative
+	 */
+	public static PackedBigInteger pow(PackedBigInteger base, int exponent) {
+		if (exponent < 0) {
+			throw new ArithmeticException("Negative exponent");
+		}
+		return new PackedBigInteger(base.negative && (exponent & 1) != 0,
+				Exponentiation.pow(base.limbs, exponent));
+	}
+
+	/**
+	 * Returns base^exponent mod modulus, without ever forming the full power.
+	 * Products are reduced with Barrett reduction, and the exponent is scanned
+	 * with a sliding window.
+	 *
+	 * @param base Big integer to raise, which may be negative
+	 * @param exponent Power, which must not be negative
+	 * @param modulus Modulus, which must be positive
+	 * @return A new PackedBigInteger in the range [0, modulus)
+	 * @throws ArithmeticException If the exponent is negative or the modulus is not positive
+	 */
+	public static PackedBigInteger modPow(PackedBigInteger base, PackedBigInteger exponent,
+			PackedBigInteger modulus) {
+		checkModulus(modulus);
+		if (exponent.negative) {
+			throw new ArithmeticException("Negative exponent");
+		}
+		if (modulus.limbs.length == 1 && modulus.limbs[0] == 1) {
+			return ZERO;
+		}
+		if (exponent.limbs.length == 0) {
+			return new PackedBigInteger(false, new int[] {1});
+		}
+		int[] b = mod(base, modulus).limbs;
+		if (b.length == 0) {
+			return ZERO;
+		}
+		return new PackedBigInteger(false, Exponentiation.modPow(b, exponent.limbs, modulus.limbs));
+	}
+
+	private static void checkModulus(PackedBigInteger modulus) {
+		if (modulus.negative || modulus.limbs.length == 0) {
+			throw new ArithmeticException("Modulus not positive");
+		}
+	}
+
+	/**
+	 * Packs a linked list big integer into limbs, in a single pass over its digits.
+	 *
+	 * @param integer Big integer to convert, which is not modified
+	 * @return PackedBigInteger with the same value
+	 */
+	public static PackedBigInteger from(BigInteger integer) {
+		int count = 0;
+		for (DigitNode ptr = integer.front; ptr != null; ptr = ptr.next) {
+			count++;
+		}
+		int[] limbs = new int[limbCount(count)];
+		int k = 0;
+		int pos = 0;
+		int scale = 1;
+		for (DigitNode ptr = integer.front; ptr != null; ptr = ptr.next) {
+			limbs[k] += ptr.digit*scale;
+			if (++pos == Limbs.DIGITS_PER_LIMB) {
+				k++;
+				pos = 0;
+				scale = 1;
+			} else {
+				scale *= 10;
+			}
+		}
+		return new PackedBigInteger(integer.negative, Limbs.trim(limbs));
+	}
+
+	/**
+	 * Unpacks this integer into the linked list representation.
+	 *
+	 * @return A new BigInteger with the same value
+	 */
+	public BigInteger toBigInteger() {
+		if (limbs.length <= 2) {
+			// at most 18 digits, so a long holds it
+			long value = limbs.length == 0 ? 0 : limbs[0] + (limbs.length == 2 ? limbs[1]*(long) Limbs.BASE : 0);
+			return BigInteger.fromLong(negative ? -value : value);
+		}
+		BigInteger res = new BigInteger();
+		DigitNode last = null;
+		for (int k = 0; k < limbs.length; k++) {
+			int limb = limbs[k];
+			int digits = k == limbs.length-1 ? Limbs.digitCount(limb) : Limbs.DIGITS_PER_LIMB;
+			for (int d = 0; d < digits; d++) {
+				DigitNode node = new DigitNode(limb % 10, null);
+				if (last == null) {
+					res.front = node;
+				} else {
+					last.next = node;
+				}
+				last = node;
+				limb /= 10;
+			}
+		}
+		res.negative = negative;
+		res.numDigits = numDigits;
+		return res;
+	}
+
+	/**
+	 * Writes the decimal digits of this integer to out, most significant first,
+	 * in the same format as toString(). Digits are produced a chunk at a time,
+	 * so no String of the whole value is ever built.
+	 *
+	 * @param out Destination of the digits
+	 * @throws IOException If out fails
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (negative) {
+			out.append('-');
+		}
+		if (limbs.length == 0) {
+			out.append('0');
+			return;
+		}
+		char[] buf = new char[WRITE_CHUNK_LIMBS*Limbs.DIGITS_PER_LIMB];
+		CharBuffer view = CharBuffer.wrap(buf);
+		int top = limbs.length-1;
+		int pos = putLimb(limbs[top], Limbs.digitCount(limbs[top]), buf, 0);
+		for (int k = top-1; k >= 0; k--) {
+			if (pos+Limbs.DIGITS_PER_LIMB > buf.length) {
+				out.append(view, 0, pos);
+				pos = 0;
+			}
+			pos = putLimb(limbs[k], Limbs.DIGITS_PER_LIMB, buf, pos);
+		}
+		out.append(view, 0, pos);
+	}
+
+	/**
+	 * Writes the decimal digits of this integer to out as ASCII bytes, most
+	 * significant first, in the same format as toString(). Digits are produced
+	 * a chunk at a time, so no String of the whole value is ever built. The
+	 * stream is neither flushed nor closed.
+	 *
+	 * @param out Destination of the digits
+	 * @throws IOException If out fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (negative) {
+			out.write('-');
+		}
+		if (limbs.length == 0) {
+			out.write('0');
+			return;
+		}
+		byte[] buf = new byte[WRITE_CHUNK_LIMBS*Limbs.DIGITS_PER_LIMB];
+		int top = limbs.length-1;
+		int pos = putLimb(limbs[top], Limbs.digitCount(limbs[top]), buf, 0);
+		for (int k = top-1; k >= 0; k--) {
+			if (pos+Limbs.DIGITS_PER_LIMB > buf.length) {
+				out.write(buf, 0, pos);
+				pos = 0;
+			}
+			pos = putLimb(limbs[k], Limbs.DIGITS_PER_LIMB, buf, pos);
+		}
+		out.write(buf, 0, pos);
+	}
+
+	/**
+	 * Writes the given number of low order digits of limb into buf at pos, most
+	 * significant first, and returns the position after them.
+	 */
+	private static int putLimb(int limb, int digits, char[] buf, int pos) {
+		for (int i = pos+digits-1; i >= pos; i--) {
+			buf[i] = (char) ('0' + limb % 10);
+			limb /= 10;
+		}
+		return pos+digits;
+	}
+
+	private static int putLimb(int limb, int digits, byte[] buf, int pos) {
+		for (int i = pos+digits-1; i >= pos; i--) {
+			buf[i] = (byte) ('0' + limb % 10);
+			limb /= 10;
+		}
+		return pos+digits;
+	}
+
+	/**
+	 * Returns one decimal digit of the magnitude, without converting the rest.
+	 *
+	 * @param index Position of the digit, 0 being the least significant
+	 * @return The digit, 0 to 9
+	 * @throws IndexOutOfBoundsException If index is negative or not below numDigits
+	 */
+	public int digitAt(int index) {
+		if (index < 0 || index >= numDigits) {
+			throw new IndexOutOfBoundsException("Digit " + index + " of " + numDigits);
+		}
+		return DigitCursor.digit(limbs, index);
+	}
+
+	/**
+	 * Returns the decimal digits of the magnitude, least significant first.
+	 * Digits are computed as they are taken, so reading only the low order
+	 * ones costs nothing for the rest. Zero has no digits, as in numDigits.
+	 *
+	 * @return Iterator over the digits
+	 */
+	public PrimitiveIterator.OfInt leastSignificantDigits() {
+		return new DigitCursor(limbs, 0, numDigits, false);
+	}
+
+	/**
+	 * Returns the decimal digits of the magnitude, most significant first, in
+	 * the order toString writes them (without the sign). Zero has no digits,
+	 * as in numDigits.
+	 *
+	 * @return Iterator over the digits
+	 */
+	public PrimitiveIterator.OfInt mostSignificantDigits() {
+		return new DigitCursor(limbs, 0, numDigits, true);
+	}
+
+	/**
+	 * Returns a spliterator over the decimal digits of the magnitude, most
+	 * significant first. It is sized and splits evenly, so parallel streams
+	 * over it divide the digits between threads and still see them in order.
+	 *
+	 * @return Spliterator over the digits
+	 */
+	public Spliterator.OfInt digitSpliterator() {
+		return new DigitCursor(limbs, 0, numDigits, true);
+	}
+
+	/**
+	 * Returns a sequential stream of the decimal digits of the magnitude, most
+	 * significant first. Call parallel() on it to spread the work over the
+	 * common pool.
+	 *
+	 * @return Stream of the digits
+	 */
+	public IntStream digits() {
+		return StreamSupport.intStream(digitSpliterator(), false);
+	}
+
+	/**
+	 * Returns the integer as a big-endian two's complement byte array, in the
+	 * fewest bytes that hold a sign bit: the same bytes as
+	 * java.math.BigInteger.toByteArray, so keys can be exchanged with it.
+	 *
+	 * @return New array of at least one byte
+	 */
+	public byte[] toByteArray() {
+		return Radix.toByteArray(negative, limbs);
+	}
+
+	/**
+	 * Returns the integer whose big-endian two's complement form is bytes,
+	 * the inverse of toByteArray. Leading sign bytes are allowed.
+	 *
+	 * @param bytes Two's complement bytes, which are not modified
+	 * @return PackedBigInteger with the value of the bytes
+	 * @throws IllegalArgumentException If the array is empty
+	 */
+	public static PackedBigInteger fromByteArray(byte[] bytes) {
+		return canonical(bytes.length != 0 && bytes[0] < 0, Radix.fromByteArray(bytes));
+	}
+
+	/**
+	 * @return Number of bytes writeBinary writes for this integer
+	 */
+	public long binarySize() {
+		return 4L*(limbs.length+1);
+	}
+
+	/**
+	 * Writes this integer in the binary form described in the class comment at
+	 * the buffer's position, and advances the position past it. Nothing is
+	 * written unless the whole value fits.
+	 *
+	 * @param out Destination buffer, which may be direct or memory-mapped
+	 * @throws BufferOverflowException If fewer than binarySize() bytes remain
+	 */
+	public void writeBinary(ByteBuffer out) {
+		if (out.remaining() < binarySize()) {
+			throw new BufferOverflowException();
+		}
+		int pos = out.position();
+		// a duplicate is big-endian whatever the order of out
+		ByteBuffer view = out.duplicate();
+		view.putInt(negative ? -limbs.length : limbs.length);
+		view.asIntBuffer().put(limbs);
+		out.position(pos + (int) binarySize());
+	}
+
+	/**
+	 * Reads an integer in the binary form described in the class comment from
+	 * the buffer's position, and advances the position past it. The limbs are
+	 * copied out in bulk, so a memory-mapped file is read at close to disk (or
+	 * page cache) bandwidth.
+	 *
+	 * @param in Source buffer, which may be direct or memory-mapped
+	 * @return PackedBigInteger read from the buffer
+	 * @throws IllegalArgumentException If the bytes are not a valid value, or
+	 *         the buffer ends inside it; the position is then left unchanged
+	 */
+	public static PackedBigInteger readBinary(ByteBuffer in) {
+		if (in.remaining() < 4) {
+			throw new IllegalArgumentException("Truncated binary integer");
+		}
+		ByteBuffer view = in.duplicate();
+		int header = view.getInt();
+		int len = checkBinaryLength(header);
+		if (view.remaining()/4 < len) {
+			throw new IllegalArgumentException("Truncated binary integer");
+		}
+		int[] limbs = len == 0 ? Limbs.ZERO : new int[len];
+		view.asIntBuffer().get(limbs);
+		checkLimbs(limbs);
+		in.position(in.position() + 4 + 4*len);
+		return canonical(header < 0, limbs);
+	}
+
+	/**
+	 * Writes this integer in the binary form described in the class comment to
+	 * a channel, such as a FileChannel or a socket, through a buffer of
+	 * CHANNEL_CHUNK_BYTES. The channel is neither forced nor closed.
+	 *
+	 * @param out Destination channel, in blocking mode
+	 * @throws IOException If the channel fails
+	 */
+	public void writeBinary(WritableByteChannel out) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.min(binarySize(), CHANNEL_CHUNK_BYTES));
+		buf.putInt(negative ? -limbs.length : limbs.length);
+		int k = 0;
+		while (true) {
+			int n = Math.min(limbs.length-k, buf.remaining()/4);
+			buf.asIntBuffer().put(limbs, k, n);
+			buf.position(buf.position() + 4*n);
+			k += n;
+			buf.flip();
+			while (buf.hasRemaining()) {
+				out.write(buf);
+			}
+			if (k == limbs.length) {
+				return;
+			}
+			buf.clear();
+		}
+	}
+
+	/**
+	 * Reads an integer in the binary form described in the class comment from
+	 * a channel, through a buffer of CHANNEL_CHUNK_BYTES. Exactly the bytes of
+	 * the value are consumed.
+	 *
+	 * @param in Source channel, in blocking mode
+	 * @return PackedBigInteger read from the channel
+	 * @throws EOFException If the channel ends inside the value
+	 * @throws IOException If the channel fails
+	 * @throws IllegalArgumentException If the bytes are not a valid value
+	 */
+	public static PackedBigInteger readBinary(ReadableByteChannel in) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(CHANNEL_CHUNK_BYTES);
+		buf.limit(4);
+		readFully(in, buf);
+		int header = buf.getInt(0);
+		int len = checkBinaryLength(header);
+		int[] limbs = len == 0 ? Limbs.ZERO : new int[len];
+		for (int k = 0; k < len; ) {
+			int n = Math.min(len-k, CHANNEL_CHUNK_BYTES/4);
+			buf.clear().limit(4*n);
+			readFully(in, buf);
+			buf.flip();
+			buf.asIntBuffer().get(limbs, k, n);
+			k += n;
+		}
+		checkLimbs(limbs);
+		return canonical(header < 0, limbs);
+	}
+
+	private static void readFully(ReadableByteChannel in, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (in.read(buf) < 0) {
+				throw new EOFException("Truncated binary integer");
+			}
+		}
+	}
+
+	private static int checkBinaryLength(int header) {
+		if (header == Integer.MIN_VALUE) {
+			throw new IllegalArgumentException("Incorrect binary format");
+		}
+		return Math.abs(header);
+	}
+
+	/**
+	 * Checks that every limb is below the base and the top one is not zero.
+	 */
+	private static void checkLimbs(int[] limbs) {
+		for (int limb : limbs) {
+			if (limb < 0 || limb >= Limbs.BASE) {
+				throw new IllegalArgumentException("Incorrect binary format");
+			}
+		}
+		if (limbs.length != 0 && limbs[limbs.length-1] == 0) {
+			throw new IllegalArgumentException("Incorrect binary format");
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		if (!Metrics.ENABLED) {
+			return toStringUnmetered();
+		}
+		long start = System.nanoTime();
+		long bytes = Metrics.allocatedBytes();
+		String res = toStringUnmetered();
+		Metrics.record(Metrics.PACKED_TO_STRING, Metrics.NONE, numDigits, start, bytes);
+		return res;
+	}
+
+	private String toStringUnmetered() {
+		if (limbs.length == 0) {
+			return "0";
+		}
+		char[] buf = new char[numDigits + (negative ? 1 : 0)];
+		int pos = 0;
+		if (negative) {
+			buf[pos++] = '-';
+		}
+		int top = limbs.length-1;
+		pos = putLimb(limbs[top], Limbs.digitCount(limbs[top]), buf, pos);
+		for (int k = top-1; k >= 0; k--) {
+			pos = putLimb(limbs[k], Limbs.DIGITS_PER_LIMB, buf, pos);
+		}
+		return new String(buf);
+	}
+
+	/**
+	 * Returns the integer written in the given radix, with a minus sign if it
+	 * is negative and lower case letters for digits above 9, as
+	 * java.math.BigInteger.toString(int) writes it.
+	 *
+	 * A radix that is a power of two is written by slicing the bits of the
+	 * binary form, in one linear pass after the conversion from limbs. Every
+	 * radix but 10 is converted by divide and conquer, dividing by powers of
+	 * the radix, which takes subquadratic time.
+	 *
+	 * @param radix Radix, from Character.MIN_RADIX to Character.MAX_RADIX
+	 * @return The integer in the radix
+	 * @throws IllegalArgumentException If the radix is out of range
+	 */
+	public String toString(int radix) {
+		Radix.checkRadix(radix);
+		if (radix == 10) {
+			return toString();
+		}
+		return Radix.toString(negative, limbs, radix);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PackedBigInteger)) {
+			return false;
+		}
+		PackedBigInteger other = (PackedBigInteger) obj;
+		return negative == other.negative && Arrays.equals(limbs, other.limbs);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			h = 31*Arrays.hashCode(limbs) + (negative ? 1 : 0);
+			hash = h;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,68 @@
+package bigint;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Helpers for running independent pieces of a multiplication as tasks in the
+ * pool set with ArithmeticConfig.setParallelPool.
+ *
+ * The tasks only ever write to arrays they own (or to disjoint ranges of a
+ * shared one), and every caller joins all of its tasks before combining their
+ * results, so a parallel product is the same as a sequential one.
+ */
+final class Parallel {
+
+	private Parallel() {
+	}
+
+	/**
+	 * @return The pool to split work of this many limbs into, or null if it
+	 *         should run on the calling thread
+	 */
+	static ForkJoinPool pool(int limbs) {
+		ForkJoinPool pool = ArithmeticConfig.getParallelPool();
+		if (pool == null || limbs < ArithmeticConfig.getParallelThreshold()) {
+			return null;
+		}
+		return pool;
+	}
+
+	/**
+	 * Runs the tasks in the pool and waits for all of them. From a worker of
+	 * that pool the tasks are forked directly; from any other thread the
+	 * caller blocks until the pool has run them.
+	 */
+	static void invokeAll(ForkJoinPool pool, ForkJoinTask<?>... tasks) {
+		if (ForkJoinTask.getPool() == pool) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		}
+	}
+
+	/**
+	 * Returns a[i] * b[i] for each i, untrimmed, in parallel if pool is not
+	 * null. Where a[i] and b[i] are the same array the product is a square.
+	 */
+	static int[][] multiplyAll(ForkJoinPool pool, int[][] a, int[][] b) {
+		int[][] res = new int[a.length][];
+		if (pool == null) {
+			for (int i = 0; i < a.length; i++) {
+				res[i] = product(a[i], b[i]);
+			}
+			return res;
+		}
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[a.length];
+		for (int i = 0; i < a.length; i++) {
+			int k = i;
+			tasks[i] = ForkJoinTask.adapt(() -> res[k] = product(a[k], b[k]));
+		}
+		invokeAll(pool, tasks);
+		return res;
+	}
+
+	private static int[] product(int[] a, int[] b) {
+		return a == b ? Multiplier.square(a) : Multiplier.multiply(a, b);
+	}
+}
@@ -0,0 +1,360 @@
+package bigint;
+
+import java.util.Arrays;
+
+/**
+ * Conversion of base 10^9 magnitudes to and from other radixes, behind
+ * PackedBigInteger.parse(CharSequence, int), toString(int), toByteArray and
+ * fromByteArray.
+ *
+ * The engine converts between limbs and digits in a word sized base B, at
+ * most 2^32: 2^32 itself for binary, and otherwise the largest power of the
+ * radix that fits, so a word holds several characters. Both directions divide
+ * and conquer over the powers B^(2^i), computed once per call by repeated
+ * squaring:
+ *  - to limbs, the upper half of the digits is converted, multiplied by the
+ *    power and added to the lower half
+ *  - from limbs, the magnitude is divided by the power that splits it in
+ *    half, and quotient and remainder are converted separately
+ * so a conversion costs a few multiplications or divisions (Burnikel-Ziegler
+ * above its threshold) of the full size per level, rather than the quadratic
+ * cost of converting one digit at a time. Small pieces are still converted
+ * one digit at a time.
+ *
+ * A radix that is a power of two then maps whole 32-bit words to characters
+ * and back by slicing bits, in a single linear pass.
+ */
+final class Radix {
+
+	/**
+	 * Largest magnitude, in limbs, that is split into digits by repeated
+	 * division by a word
+	 */
+	private static final int LEAF_LIMBS = 24;
+
+	/**
+	 * Largest number of digits combined into limbs by multiplying by a word
+	 */
+	private static final int LEAF_DIGITS = 32;
+
+	private static final long WORD_BASE = 1L << 32;
+
+	private Radix() {
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the radix is not between
+	 *         Character.MIN_RADIX and Character.MAX_RADIX
+	 */
+	static void checkRadix(int radix) {
+		if (radix < Character.MIN_RADIX || radix > Character.MAX_RADIX) {
+			throw new IllegalArgumentException("Radix out of range: " + radix);
+		}
+	}
+
+	/**
+	 * Parses the digits of integer in [start, end), which hold no sign or
+	 * spaces, into a trimmed magnitude. Digits above 9 are letters of either
+	 * case, as for Character.digit, but only ASCII ones are accepted.
+	 *
+	 * @throws IllegalArgumentException If there are no digits, or a character
+	 *         is not a digit in the radix
+	 */
+	static int[] parse(CharSequence integer, int start, int end, int radix) {
+		if (start == end) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
+		int count = end - start;
+		if (Integer.bitCount(radix) == 1) {
+			int bits = Integer.numberOfTrailingZeros(radix);
+			int[] words = new int[(int) (((long) count*bits + 31) / 32)];
+			long pos = 0;
+			for (int i = end-1; i >= start; i--, pos += bits) {
+				int v = digit(integer.charAt(i), radix);
+				int word = (int) (pos >>> 5);
+				int shift = (int) (pos & 31);
+				words[word] |= v << shift;
+				if (shift + bits > 32) {
+					words[word+1] |= v >>> (32 - shift);
+				}
+			}
+			return fromDigits(words, WORD_BASE);
+		}
+		int perWord = charsPerWord(radix);
+		long base = pow(radix, perWord);
+		int[] words = new int[(count + perWord-1) / perWord];
+		int k = 0;
+		for (int hi = end; hi > start; hi -= perWord) {
+			long v = 0;
+			for (int i = Math.max(start, hi-perWord); i < hi; i++) {
+				v = v*radix + digit(integer.charAt(i), radix);
+			}
+			words[k++] = (int) v;
+		}
+		return fromDigits(words, base);
+	}
+
+	/**
+	 * Formats a magnitude in the radix, most significant digit first, with a
+	 * minus sign in front if negative is set. Digits above 9 are lower case
+	 * letters.
+	 */
+	static String toString(boolean negative, int[] limbs, int radix) {
+		if (limbs.length == 0) {
+			return "0";
+		}
+		int sign = negative ? 1 : 0;
+		if (Integer.bitCount(radix) == 1) {
+			int bits = Integer.numberOfTrailingZeros(radix);
+			int[] words = toDigits(limbs, WORD_BASE);
+			long bitLength = 32L*words.length - Integer.numberOfLeadingZeros(words[words.length-1]);
+			int count = checkLength((bitLength + bits-1) / bits + sign);
+			char[] buf = new char[count];
+			long pos = 0;
+			for (int c = count-1; c >= sign; c--, pos += bits) {
+				int word = (int) (pos >>> 5);
+				int shift = (int) (pos & 31);
+				int v = words[word] >>> shift;
+				if (shift + bits > 32 && word+1 < words.length) {
+					v |= words[word+1] << (32 - shift);
+				}
+				buf[c] = Character.forDigit(v & (radix-1), radix);
+			}
+			if (negative) {
+				buf[0] = '-';
+			}
+			return new String(buf);
+		}
+		int perWord = charsPerWord(radix);
+		int[] words = toDigits(limbs, pow(radix, perWord));
+		long top = words[words.length-1] & 0xFFFFFFFFL;
+		int topChars = 0;
+		for (long t = top; t != 0; t /= radix) {
+			topChars++;
+		}
+		int count = checkLength((long) (words.length-1)*perWord + topChars + sign);
+		char[] buf = new char[count];
+		int pos = count;
+		for (int k = 0; k < words.length; k++) {
+			long v = words[k] & 0xFFFFFFFFL;
+			int chars = k == words.length-1 ? topChars : perWord;
+			for (int c = 0; c < chars; c++) {
+				buf[--pos] = Character.forDigit((int) (v % radix), radix);
+				v /= radix;
+			}
+		}
+		if (negative) {
+			buf[0] = '-';
+		}
+		return new String(buf);
+	}
+
+	/**
+	 * Returns the shortest big-endian two's complement form of the integer,
+	 * the same bytes as java.math.BigInteger.toByteArray. Zero is one zero byte.
+	 */
+	static byte[] toByteArray(boolean negative, int[] limbs) {
+		int[] words = toDigits(limbs, WORD_BASE);
+		// one spare byte in front for the sign bit
+		byte[] bytes = new byte[checkLength(4L*words.length + 1)];
+		for (int k = 0; k < words.length; k++) {
+			int w = words[k];
+			int at = bytes.length-1 - 4*k;
+			bytes[at] = (byte) w;
+			bytes[at-1] = (byte) (w >>> 8);
+			bytes[at-2] = (byte) (w >>> 16);
+			bytes[at-3] = (byte) (w >>> 24);
+		}
+		if (negative) {
+			negate(bytes);
+		}
+		int from = 0;
+		while (from < bytes.length-1 && (bytes[from] == 0 && bytes[from+1] >= 0
+				|| bytes[from] == -1 && bytes[from+1] < 0)) {
+			from++;
+		}
+		return Arrays.copyOfRange(bytes, from, bytes.length);
+	}
+
+	/**
+	 * Returns the magnitude of a big-endian two's complement integer, whose
+	 * sign is that of bytes[0]. The array is not modified.
+	 *
+	 * @throws IllegalArgumentException If the array is empty
+	 */
+	static int[] fromByteArray(byte[] bytes) {
+		if (bytes.length == 0) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
+		byte[] mag = bytes;
+		if (bytes[0] < 0) {
+			mag = bytes.clone();
+			negate(mag);
+		}
+		int[] words = new int[(mag.length + 3) / 4];
+		for (int i = mag.length-1, pos = 0; i >= 0; i--, pos++) {
+			words[pos >>> 2] |= (mag[i] & 0xFF) << (8*(pos & 3));
+		}
+		return fromDigits(words, WORD_BASE);
+	}
+
+	/**
+	 * Returns the trimmed magnitude whose digits in base (at most 2^32, each
+	 * read as an unsigned int) are given least significant first.
+	 */
+	static int[] fromDigits(int[] digits, long base) {
+		int len = digits.length;
+		while (len > 0 && digits[len-1] == 0) {
+			len--;
+		}
+		if (len == 0) {
+			return Limbs.ZERO;
+		}
+		// powers[i] = base^(2^i), for splits of up to 2^i digits off len
+		int[][] powers = new int[len > LEAF_DIGITS ? 32 - Integer.numberOfLeadingZeros(len-1) : 1][];
+		powers[0] = PackedBigInteger.valueOf(base).limbs;
+		for (int i = 1; i < powers.length; i++) {
+			powers[i] = Limbs.square(powers[i-1]);
+		}
+		return fromDigits(digits, 0, len, base, powers);
+	}
+
+	private static int[] fromDigits(int[] digits, int lo, int hi, long base, int[][] powers) {
+		if (hi - lo <= LEAF_DIGITS) {
+			// Horner's rule, most significant digit first, with a long carry:
+			// a limb times base plus a carry stays below 2^63
+			int[] acc = new int[(int) ((hi - lo) * (Math.log(base) / Math.log(Limbs.BASE))) + 2];
+			int len = 0;
+			for (int i = hi-1; i >= lo; i--) {
+				long carry = digits[i] & 0xFFFFFFFFL;
+				for (int k = 0; k < len; k++) {
+					long t = acc[k]*base + carry;
+					carry = t / Limbs.BASE;
+					acc[k] = (int) (t - carry*Limbs.BASE);
+				}
+				while (carry != 0) {
+					acc[len++] = (int) (carry % Limbs.BASE);
+					carry /= Limbs.BASE;
+				}
+			}
+			return Arrays.copyOf(acc, len);
+		}
+		// split off the largest power of two number of digits below hi - lo
+		int k = 31 - Integer.numberOfLeadingZeros(hi - lo - 1);
+		int mid = lo + (1 << k);
+		int[] low = fromDigits(digits, lo, mid, base, powers);
+		int[] high = fromDigits(digits, mid, hi, base, powers);
+		return Limbs.add(Limbs.multiply(high, powers[k]), low);
+	}
+
+	/**
+	 * Returns the digits of a magnitude in base (at most 2^32, each stored as
+	 * an unsigned int), least significant first, without leading zeros.
+	 */
+	static int[] toDigits(int[] limbs, long base) {
+		if (limbs.length == 0) {
+			return Limbs.ZERO;
+		}
+		// powers[i] = base^(2^i), up to the one that splits the whole magnitude
+		int[][] powers = new int[32][];
+		powers[0] = PackedBigInteger.valueOf(base).limbs;
+		int levels = 1;
+		while (2*powers[levels-1].length - 1 <= limbs.length && levels < powers.length) {
+			powers[levels] = Limbs.square(powers[levels-1]);
+			levels++;
+		}
+		double digitsPerLimb = Math.log(Limbs.BASE) / Math.log(base);
+		int[] out = new int[checkLength((long) (limbs.length * digitsPerLimb) + 2)];
+		int n = toDigits(limbs, base, powers, levels, out, 0, -1);
+		return Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Writes the digits of a into out from off, exactly width of them with
+	 * leading zeros if width is not negative, and otherwise without leading
+	 * zeros. Returns the number of digits written.
+	 */
+	private static int toDigits(int[] a, long base, int[][] powers, int levels, int[] out, int off, int width) {
+		if (a.length <= LEAF_LIMBS) {
+			int[] cur = a.clone();
+			int len = cur.length;
+			int n = 0;
+			while (len != 0) {
+				long rem = 0;
+				for (int i = len-1; i >= 0; i--) {
+					long v = rem*Limbs.BASE + cur[i];
+					long q = v / base;
+					cur[i] = (int) q;
+					rem = v - q*base;
+				}
+				out[off + n++] = (int) rem;
+				while (len > 0 && cur[len-1] == 0) {
+					len--;
+				}
+			}
+			while (n < width) {
+				out[off + n++] = 0;
+			}
+			return n;
+		}
+		// the largest power with at most about half the limbs of a
+		int k = levels-1;
+		while (k > 0 && 2*powers[k].length - 1 > a.length) {
+			k--;
+		}
+		int[][] qr = Divider.divide(a, powers[k]);
+		if (qr[0].length == 0) {
+			return toDigits(qr[1], base, powers, levels, out, off, width);
+		}
+		int half = 1 << k;
+		toDigits(qr[1], base, powers, levels, out, off, half);
+		return half + toDigits(qr[0], base, powers, levels, out, off + half, width < 0 ? -1 : width - half);
+	}
+
+	/**
+	 * Flips the sign of a big-endian two's complement integer in place.
+	 */
+	private static void negate(byte[] bytes) {
+		int carry = 1;
+		for (int i = bytes.length-1; i >= 0; i--) {
+			int v = (~bytes[i] & 0xFF) + carry;
+			bytes[i] = (byte) v;
+			carry = v >>> 8;
+		}
+	}
+
+	private static int digit(char c, int radix) {
+		int v = c < 128 ? Character.digit(c, radix) : -1;
+		if (v < 0) {
+			throw new IllegalArgumentException("Incorrect format");
+		}
+		return v;
+	}
+
+	/**
+	 * Number of characters of the radix that fit in one word digit, the
+	 * largest m with radix^m at most 2^32
+	 */
+	private static int charsPerWord(int radix) {
+		int m = 0;
+		for (long p = radix; p <= WORD_BASE; p *= radix) {
+			m++;
+		}
+		return m;
+	}
+
+	private static long pow(int radix, int exponent) {
+		long p = 1;
+		for (int i = 0; i < exponent; i++) {
+			p *= radix;
+		}
+		return p;
+	}
+
+	private static int checkLength(long length) {
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new ArithmeticException("Result too large for an array");
+		}
+		return (int) length;
+	}
+}
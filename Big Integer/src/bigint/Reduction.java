@@ -0,0 +1,171 @@
+package bigint;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Sums and products of many integers at once, behind PackedBigInteger.sum and
+ * PackedBigInteger.product.
+ *
+ * Folding add left to right over k terms rewrites the running total k times.
+ * sum instead adds every term column by column into one long accumulator and
+ * carries it in a single pass at the end, so it costs one pass over the
+ * terms plus one over the result. A column holds at most 2^31 limbs below
+ * 10^9 (one per term), which cannot overflow a long, so no intermediate
+ * carries are ever needed.
+ *
+ * Folding multiply left to right multiplies an ever growing product by a
+ * small factor each time, which is quadratic in the size of the result.
+ * product instead multiplies along a balanced tree, splitting the factors
+ * where they hold half of the limbs, so the subproducts at each level are
+ * similar in size and the top products reach the fast multiplication tiers.
+ *
+ * With a parallel pool set in ArithmeticConfig, the two halves of a large
+ * enough subtree (or a large enough range of terms) run as parallel tasks.
+ * The result does not depend on the pool.
+ */
+final class Reduction {
+
+	/**
+	 * Fewest limbs a range of terms must hold to be split into two parallel
+	 * tasks. Adding a limb is so cheap that smaller tasks would cost more to
+	 * schedule than they save.
+	 */
+	private static final int SUM_TASK_LIMBS = 1 << 16;
+
+	private Reduction() {
+	}
+
+	/**
+	 * Returns the sum of the terms, each of either sign.
+	 */
+	static PackedBigInteger sum(PackedBigInteger[] terms) {
+		long[] prefix = prefixLimbs(terms);
+		long total = prefix[terms.length];
+		ForkJoinPool pool = total < 2*SUM_TASK_LIMBS ? null
+				: Parallel.pool((int) Math.min(total, Integer.MAX_VALUE));
+		long[] acc = columns(pool, terms, prefix, 0, terms.length);
+		int[] res = new int[acc.length+2];
+		boolean negative = false;
+		int n = Limbs.carryColumns(acc, acc.length, res);
+		if (n < 0) {
+			// the sum is negative: carry its magnitude instead
+			for (int k = 0; k < acc.length; k++) {
+				acc[k] = -acc[k];
+			}
+			negative = true;
+			n = Limbs.carryColumns(acc, acc.length, res);
+		}
+		return PackedBigInteger.canonical(negative, Arrays.copyOf(res, n));
+	}
+
+	/**
+	 * Returns the product of the factors, 1 if there are none.
+	 */
+	static PackedBigInteger product(PackedBigInteger[] factors) {
+		if (factors.length == 0) {
+			return PackedBigInteger.valueOf(1);
+		}
+		boolean negative = false;
+		int[][] mags = new int[factors.length][];
+		for (int i = 0; i < factors.length; i++) {
+			if (factors[i].limbs.length == 0) {
+				return PackedBigInteger.ZERO;
+			}
+			negative ^= factors[i].negative;
+			mags[i] = factors[i].limbs;
+		}
+		return PackedBigInteger.canonical(negative, product(mags, prefixLimbs(factors), 0, mags.length));
+	}
+
+	/**
+	 * Returns the product of mags[lo, hi), trimmed. The halves run as parallel
+	 * tasks when the smaller one is large enough for Parallel.pool.
+	 */
+	private static int[] product(int[][] mags, long[] prefix, int lo, int hi) {
+		if (hi - lo == 1) {
+			return mags[lo];
+		}
+		if (hi - lo == 2) {
+			return mags[lo] == mags[lo+1] ? Limbs.square(mags[lo]) : Limbs.multiply(mags[lo], mags[lo+1]);
+		}
+		int mid = split(prefix, lo, hi);
+		long smaller = Math.min(prefix[mid] - prefix[lo], prefix[hi] - prefix[mid]);
+		ForkJoinPool pool = Parallel.pool((int) Math.min(smaller, Integer.MAX_VALUE));
+		int[][] halves = new int[2][];
+		if (pool == null) {
+			halves[0] = product(mags, prefix, lo, mid);
+			halves[1] = product(mags, prefix, mid, hi);
+		} else {
+			Parallel.invokeAll(pool,
+					ForkJoinTask.adapt(() -> halves[0] = product(mags, prefix, lo, mid)),
+					ForkJoinTask.adapt(() -> halves[1] = product(mags, prefix, mid, hi)));
+		}
+		return Limbs.multiply(halves[0], halves[1]);
+	}
+
+	/**
+	 * Returns the signed column sums of terms[lo, hi), as long as the longest
+	 * of them. With a pool the range is halved into parallel tasks down to
+	 * SUM_TASK_LIMBS, and the halves' columns are added together.
+	 */
+	private static long[] columns(ForkJoinPool pool, PackedBigInteger[] terms, long[] prefix, int lo, int hi) {
+		if (pool == null || hi - lo < 2 || prefix[hi] - prefix[lo] < 2*SUM_TASK_LIMBS) {
+			int len = 0;
+			for (int i = lo; i < hi; i++) {
+				len = Math.max(len, terms[i].limbs.length);
+			}
+			long[] acc = new long[len];
+			for (int i = lo; i < hi; i++) {
+				int[] limbs = terms[i].limbs;
+				if (terms[i].negative) {
+					for (int k = 0; k < limbs.length; k++) {
+						acc[k] -= limbs[k];
+					}
+				} else {
+					for (int k = 0; k < limbs.length; k++) {
+						acc[k] += limbs[k];
+					}
+				}
+			}
+			return acc;
+		}
+		int mid = split(prefix, lo, hi);
+		long[][] halves = new long[2][];
+		Parallel.invokeAll(pool,
+				ForkJoinTask.adapt(() -> halves[0] = columns(pool, terms, prefix, lo, mid)),
+				ForkJoinTask.adapt(() -> halves[1] = columns(pool, terms, prefix, mid, hi)));
+		long[] acc = halves[0].length >= halves[1].length ? halves[0] : halves[1];
+		long[] other = acc == halves[0] ? halves[1] : halves[0];
+		for (int k = 0; k < other.length; k++) {
+			acc[k] += other[k];
+		}
+		return acc;
+	}
+
+	/**
+	 * Returns the index in (lo, hi) where the limbs of the range are divided
+	 * most evenly, given prefix[i] = limbs of the elements before i.
+	 */
+	private static int split(long[] prefix, int lo, int hi) {
+		long half = prefix[lo] + (prefix[hi] - prefix[lo]) / 2;
+		int mid = Arrays.binarySearch(prefix, lo+1, hi, half);
+		if (mid < 0) {
+			mid = -mid-1;
+			// the insertion point or the one before it, whichever is closer
+			if (mid > lo+1 && half - prefix[mid-1] < (mid < hi ? prefix[mid] : Long.MAX_VALUE) - half) {
+				mid--;
+			}
+		}
+		return Math.min(Math.max(mid, lo+1), hi-1);
+	}
+
+	private static long[] prefixLimbs(PackedBigInteger[] terms) {
+		long[] prefix = new long[terms.length+1];
+		for (int i = 0; i < terms.length; i++) {
+			prefix[i+1] = prefix[i] + terms[i].limbs.length;
+		}
+		return prefix;
+	}
+}
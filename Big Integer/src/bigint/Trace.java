@@ -0,0 +1,47 @@
+package bigint;
+
+/**
+ * Dispatches trace events to the installed TraceListener.
+ *
+ * Every call site is guarded by ENABLED, which is a static final flag read once
+ * from the bigint.trace system property. When it is false the JIT drops the
+ * guarded code entirely, so tracing costs nothing unless it was asked for at
+ * startup.
+ */
+final class Trace {
+
+	/**
+	 * True if the JVM was started with -Dbigint.trace=true
+	 */
+	static final boolean ENABLED = Boolean.getBoolean("bigint.trace");
+
+	private static volatile TraceListener listener;
+
+	private Trace() {
+	}
+
+	static void setListener(TraceListener newListener) {
+		listener = newListener;
+	}
+
+	static void emit(String operation, String detail) {
+		TraceListener current = listener;
+		if (current != null) {
+			current.trace(operation, detail);
+		}
+	}
+
+	/**
+	 * Formats a digit list in storage order, least significant digit first.
+	 */
+	static String digits(DigitNode node) {
+		StringBuilder sb = new StringBuilder();
+		for (DigitNode n = node; n != null; n = n.next) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(n.digit);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,19 @@
+package bigint;
+
+/**
+ * Receives diagnostic events from the arithmetic in this package, in place of
+ * the debug printing it used to do on System.out.
+ *
+ * Tracing is compiled out unless the JVM is started with -Dbigint.trace=true,
+ * see ArithmeticConfig.setTraceListener.
+ */
+public interface TraceListener {
+
+	/**
+	 * Called for each traced step.
+	 *
+	 * @param operation Name of the operation, e.g. "parse" or "multiply"
+	 * @param detail Human readable description of the step
+	 */
+	void trace(String operation, String detail);
+}